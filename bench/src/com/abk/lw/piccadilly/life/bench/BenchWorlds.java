@@ -0,0 +1,112 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.World;
+import com.abk.lw.piccadilly.life.model.BodyPool;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.FixedEntity;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+import com.abk.lw.piccadilly.life.model.StaticEntityDNA;
+
+/**
+ * Builds bare worlds populated with entities for benchmarks.
+ *
+ * @author kgilmer
+ *
+ */
+final class BenchWorlds {
+
+    static final long SEED = 42;
+
+    private static final float SPREAD = 16f;
+
+    /**
+     * Large enough that entities don't run out of energy during a measurement.
+     */
+    static final float INITIAL_ENERGY = 1e9f;
+
+    private BenchWorlds() {
+    }
+
+    static World createWorld() {
+        return new World(new Vec2(0f, 0f), true);
+    }
+
+    /**
+     * Wall in the area entities are created in, so they stay in contact.
+     */
+    static void enclose(World world) {
+        Body edge = world.createBody(new BodyDef());
+        PolygonShape shape = new PolygonShape();
+        float s = SPREAD / 2 + .5f;
+
+        shape.setAsEdge(new Vec2(-s, -s), new Vec2(s, -s));
+        edge.createFixture(shape, 1f);
+        shape.setAsEdge(new Vec2(-s, -s), new Vec2(-s, s));
+        edge.createFixture(shape, 1f);
+        shape.setAsEdge(new Vec2(s, -s), new Vec2(s, s));
+        edge.createFixture(shape, 1f);
+        shape.setAsEdge(new Vec2(-s, s), new Vec2(s, s));
+        edge.createFixture(shape, 1f);
+    }
+
+    static MovingEntityDNA randomMovingDNA(Random rnd) {
+        return new MovingEntityDNA(MovingEntityDNA.generateRandomGenes(MovingEntityDNA.MAX_MOVEMENT_GENES, rnd),
+                0xFF000000 | rnd.nextInt(0xFFFFFF), rnd.nextInt(20) + 20, .05f + rnd.nextFloat() * .25f,
+                rnd.nextInt(241) + 15, rnd.nextInt(256));
+    }
+
+    static List<ISimEntity> createMovingEntities(EntityStore store, World world, List<ISimEntity> babies, int count, Random rnd) {
+        return createMovingEntities(store, new BodyPool(world), babies, count, rnd);
+    }
+
+    static List<ISimEntity> createMovingEntities(EntityStore store, BodyPool bodies, List<ISimEntity> babies, int count, Random rnd) {
+        List<ISimEntity> l = new ArrayList<ISimEntity>(count);
+
+        for (int i = 0; i < count; ++i)
+            l.add(new MovingEntity(store, babies, bodies, position(rnd), position(rnd), randomMovingDNA(rnd), INITIAL_ENERGY));
+
+        return l;
+    }
+
+    static List<ISimEntity> createFixedEntities(EntityStore store, World world, List<ISimEntity> babies, int count, Random rnd) {
+        return createFixedEntities(store, world, babies, count, rnd, false);
+    }
+
+    static List<ISimEntity> createFixedEntities(EntityStore store, World world, List<ISimEntity> babies, int count, Random rnd, boolean sensor) {
+        BodyPool bodies = new BodyPool(world);
+        List<ISimEntity> l = new ArrayList<ISimEntity>(count);
+
+        for (int i = 0; i < count; ++i)
+            l.add(new FixedEntity(store, babies, bodies, position(rnd), position(rnd), new StaticEntityDNA(rnd.nextFloat() * .3f), INITIAL_ENERGY, sensor));
+
+        return l;
+    }
+
+    static float position(Random rnd) {
+        return SPREAD * (rnd.nextFloat() - .5f);
+    }
+}
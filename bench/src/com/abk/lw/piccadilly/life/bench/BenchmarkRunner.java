@@ -0,0 +1,221 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import com.abk.lw.piccadilly.life.model.DNACopyType;
+
+/**
+ * Runs the simulation microbenchmarks on a plain JVM.
+ *
+ * Usage: BenchmarkRunner [-p 20,1000,10000] [-wi 3] [-i 5] [-t millis] [-prof gc] [name filter...]
+ *
+ * Each benchmark is warmed up, then measured for a number of timed
+ * iterations, each against freshly built state. With -prof gc the bytes
+ * allocated and collections run per operation are reported as well.
+ *
+ * @author kgilmer
+ *
+ */
+public class BenchmarkRunner {
+
+    private static final int[] DEFAULT_POPULATIONS = { 20, 1000, 10000 };
+
+    private int[] populations = DEFAULT_POPULATIONS;
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationMillis = 1000;
+    private boolean profileAllocation;
+    private final List<String> filters = new ArrayList<String>();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * @return every benchmark in the suite.
+     */
+    public static List<SimBenchmark> createSuite() {
+        List<SimBenchmark> l = new ArrayList<SimBenchmark>();
+
+        l.add(new ModelUpdateBenchmark());
+        l.add(new FoodContactBenchmark(false));
+        l.add(new FoodContactBenchmark(true));
+        l.add(new MovingEntityTimeStepBenchmark());
+        l.add(new FixedEntityTimeStepBenchmark());
+        l.add(new EntityStoreTimeStepBenchmark());
+        l.add(new ContactListenerBenchmark());
+        l.add(new BodyChurnBenchmark(false));
+        l.add(new BodyChurnBenchmark(true));
+        l.add(new CheckpointBenchmark(false));
+        l.add(new CheckpointBenchmark(true));
+        l.add(new LineageLogBenchmark());
+        l.add(new ForceFieldBenchmark(0));
+        l.add(new ForceFieldBenchmark(4));
+        l.add(new ForceFieldBenchmark(16));
+        for (DNACopyType t : DNACopyType.values())
+            l.add(new DNACopyBenchmark(t));
+
+        return l;
+    }
+
+    public void run(List<SimBenchmark> suite) {
+        System.out.println(String.format("%-36s %8s %14s %12s %12s %8s",
+                "Benchmark", "(pop)", "ns/op", "error", "B/op", "gc/op"));
+
+        for (SimBenchmark b : suite) {
+            if (!isSelected(b))
+                continue;
+
+            if (b.isPopulationDependent()) {
+                for (int p : populations)
+                    measure(b, p);
+            } else {
+                measure(b, 0);
+            }
+        }
+    }
+
+    private boolean isSelected(SimBenchmark b) {
+        if (filters.isEmpty())
+            return true;
+
+        for (String f : filters)
+            if (b.getName().contains(f))
+                return true;
+
+        return false;
+    }
+
+    private void measure(SimBenchmark b, int population) {
+        for (int i = 0; i < warmupIterations; ++i)
+            iteration(b, population);
+
+        double[] nsPerOp = new double[iterations];
+        double bytes = 0, gcs = 0, ops = 0;
+
+        for (int i = 0; i < iterations; ++i) {
+            Result r = iteration(b, population);
+            nsPerOp[i] = r.nanos / (double) r.ops;
+            bytes += r.bytes;
+            gcs += r.gcs;
+            ops += r.ops;
+        }
+
+        double mean = 0;
+        for (double v : nsPerOp)
+            mean += v;
+        mean /= nsPerOp.length;
+
+        double var = 0;
+        for (double v : nsPerOp)
+            var += (v - mean) * (v - mean);
+        double error = nsPerOp.length > 1 ? Math.sqrt(var / (nsPerOp.length - 1)) : 0;
+
+        System.out.println(String.format("%-36s %8s %14.1f %12.1f %12s %8s",
+                b.getName(),
+                b.isPopulationDependent() ? Integer.toString(population) : "-",
+                mean,
+                error,
+                profileAllocation ? String.format("%.1f", bytes / ops) : "-",
+                profileAllocation ? String.format("%.4f", gcs / ops) : "-"));
+    }
+
+    private Result iteration(SimBenchmark b, int population) {
+        b.setup(population);
+
+        Result r = new Result();
+        long sink = 0;
+        long deadline = iterationMillis * 1000000L;
+        long bytesBefore = allocatedBytes();
+        long gcBefore = gcCount();
+        long start = System.nanoTime();
+
+        do {
+            sink += b.run();
+            r.ops++;
+            r.nanos = System.nanoTime() - start;
+        } while (r.nanos < deadline);
+
+        r.bytes = allocatedBytes() - bytesBefore;
+        r.gcs = gcCount() - gcBefore;
+
+        if (sink == 42)
+            System.out.print("");
+
+        return r;
+    }
+
+    private long allocatedBytes() {
+        if (!profileAllocation || !(threads instanceof com.sun.management.ThreadMXBean))
+            return 0;
+
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long gcCount() {
+        if (!profileAllocation)
+            return 0;
+
+        long c = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            c += Math.max(0, gc.getCollectionCount());
+
+        return c;
+    }
+
+    private static class Result {
+        long ops;
+        long nanos;
+        long bytes;
+        long gcs;
+    }
+
+    private static int[] parsePopulations(String s) {
+        String[] parts = s.split(",");
+        int[] p = new int[parts.length];
+
+        for (int i = 0; i < parts.length; ++i)
+            p[i] = Integer.parseInt(parts[i].trim());
+
+        return p;
+    }
+
+    public static void main(String[] args) {
+        BenchmarkRunner runner = new BenchmarkRunner();
+
+        for (int i = 0; i < args.length; ++i) {
+            String a = args[i];
+
+            if (a.equals("-p"))
+                runner.populations = parsePopulations(args[++i]);
+            else if (a.equals("-wi"))
+                runner.warmupIterations = Integer.parseInt(args[++i]);
+            else if (a.equals("-i"))
+                runner.iterations = Integer.parseInt(args[++i]);
+            else if (a.equals("-t"))
+                runner.iterationMillis = Long.parseLong(args[++i]);
+            else if (a.equals("-prof") && args[++i].equals("gc"))
+                runner.profileAllocation = true;
+            else
+                runner.filters.add(a);
+        }
+
+        runner.run(createSuite());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jbox2d.dynamics.World;
+import com.abk.lw.piccadilly.life.model.BodyPool;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+
+/**
+ * A tenth of the population dies and is replaced by newborns, with or without
+ * reusing bodies through a {@link BodyPool}, followed by a physics step which
+ * picks up the new broad-phase proxies.  One operation is one round of deaths
+ * and births and one step.
+ *
+ * @author kgilmer
+ *
+ */
+public class BodyChurnBenchmark extends SimBenchmark {
+
+    private static final float STEP_IN_SECONDS = 1 / 50f;
+
+    private final boolean pooled;
+    private final List<ISimEntity> babies = new ArrayList<ISimEntity>();
+    private World world;
+    private EntityStore store;
+    private BodyPool bodies;
+    private MovingEntityDNA[] dna;
+    private float[] positions;
+    private int churn;
+    private int next;
+
+    public BodyChurnBenchmark(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    @Override
+    public String getName() {
+        return "bodies.churn." + (pooled ? "pooled" : "new");
+    }
+
+    @Override
+    public void setup(int population) {
+        Random rnd = new Random(BenchWorlds.SEED);
+        store = new EntityStore();
+        //A pool that keeps nothing destroys every released body, like world.destroyBody().
+        world = BenchWorlds.createWorld();
+        bodies = pooled ? new BodyPool(world) : new BodyPool(world, 0);
+        BenchWorlds.createMovingEntities(store, bodies, babies, population, rnd);
+        churn = Math.max(1, population / 10);
+
+        dna = new MovingEntityDNA[churn];
+        positions = new float[churn * 2];
+        for (int i = 0; i < churn; ++i) {
+            dna[i] = BenchWorlds.randomMovingDNA(rnd);
+            positions[i * 2] = BenchWorlds.position(rnd);
+            positions[i * 2 + 1] = BenchWorlds.position(rnd);
+        }
+    }
+
+    @Override
+    public long run() {
+        for (int i = 0; i < churn; ++i) {
+            ISimEntity e = store.getAt(next++ % store.size());
+            bodies.release(e.getBody());
+            store.remove(e.getHandle());
+            new MovingEntity(store, babies, bodies, positions[i * 2], positions[i * 2 + 1], dna[i], BenchWorlds.INITIAL_ENERGY);
+        }
+
+        world.step(STEP_IN_SECONDS, 1, 1);
+
+        return store.size();
+    }
+}
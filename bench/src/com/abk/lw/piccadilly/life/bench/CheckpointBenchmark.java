@@ -0,0 +1,72 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.abk.lw.piccadilly.life.PiccadillyLifeModelRoot;
+import com.abk.lw.piccadilly.life.WorldCheckpoint;
+
+/**
+ * Saving a freshly seeded world to a checkpoint file, or restoring it.
+ *
+ * @author kgilmer
+ *
+ */
+public class CheckpointBenchmark extends SimBenchmark {
+
+    private final boolean restore;
+    private PiccadillyLifeModelRoot model;
+    private File file;
+
+    public CheckpointBenchmark(boolean restore) {
+        this.restore = restore;
+    }
+
+    @Override
+    public String getName() {
+        return "checkpoint." + (restore ? "read" : "write");
+    }
+
+    @Override
+    public void setup(int population) {
+        model = new PiccadillyLifeModelRoot(population, BenchWorlds.SEED);
+
+        try {
+            if (file == null) {
+                file = File.createTempFile("bench", ".checkpoint");
+                file.deleteOnExit();
+            }
+            WorldCheckpoint.write(model, file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write checkpoint", e);
+        }
+    }
+
+    @Override
+    public long run() {
+        try {
+            if (restore)
+                return WorldCheckpoint.read(file).getEntites().size();
+
+            WorldCheckpoint.write(model, file);
+            return file.length();
+        } catch (IOException e) {
+            throw new IllegalStateException("Checkpoint failed", e);
+        }
+    }
+}
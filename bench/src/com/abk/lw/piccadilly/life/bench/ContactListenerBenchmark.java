@@ -0,0 +1,75 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.contacts.Contact;
+import com.abk.lw.piccadilly.life.model.ContactEventBuffer;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+import com.abk.lw.piccadilly.life.model.SimEntityContactListener;
+
+/**
+ * {@link SimEntityContactListener#beginContact(Contact)} for one contact per
+ * entity, half of them feeding and half moving-moving encounters, followed by
+ * {@link ContactEventBuffer#resolve(EntityStore)}. One operation is one pass
+ * over all contacts.
+ *
+ * @author kgilmer
+ *
+ */
+public class ContactListenerBenchmark extends SimBenchmark {
+
+    private final ContactEventBuffer buffer = new ContactEventBuffer();
+    private final SimEntityContactListener listener = new SimEntityContactListener(buffer);
+    private EntityStore store;
+    private Contact[] contacts;
+
+    @Override
+    public String getName() {
+        return "contacts.recordAndResolve";
+    }
+
+    @Override
+    public void setup(int population) {
+        Random rnd = new Random(BenchWorlds.SEED);
+        World world = BenchWorlds.createWorld();
+        store = new EntityStore();
+        List<ISimEntity> babies = new ArrayList<ISimEntity>();
+        List<ISimEntity> moving = BenchWorlds.createMovingEntities(store, world, babies, population, rnd);
+        List<ISimEntity> food = BenchWorlds.createFixedEntities(store, world, babies, Math.max(1, population / 10), rnd);
+
+        contacts = new Contact[population];
+        for (int i = 0; i < population; ++i) {
+            ISimEntity a = moving.get(i);
+            ISimEntity b = i % 2 == 0 ? food.get(rnd.nextInt(food.size())) : moving.get(rnd.nextInt(population));
+            contacts[i] = world.popContact(a.getBody().getFixtureList(), b.getBody().getFixtureList());
+        }
+    }
+
+    @Override
+    public long run() {
+        for (int i = 0; i < contacts.length; ++i)
+            listener.beginContact(contacts[i]);
+
+        buffer.resolve(store);
+
+        return contacts.length;
+    }
+}
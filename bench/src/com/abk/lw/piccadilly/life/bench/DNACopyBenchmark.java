@@ -0,0 +1,68 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.Random;
+import com.abk.lw.piccadilly.life.model.DNACache;
+import com.abk.lw.piccadilly.life.model.DNACopyType;
+import com.abk.lw.piccadilly.life.model.Genome;
+import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+
+/**
+ * {@link MovingEntityDNA#copyGenes(Genome, Random)} for a single {@link DNACopyType},
+ * and the offspring's DNA looked up in a {@link DNACache} as a birth does.
+ *
+ * @author kgilmer
+ *
+ */
+public class DNACopyBenchmark extends SimBenchmark {
+
+    private final DNACopyType copyType;
+    private MovingEntityDNA dna;
+    private Genome partner;
+    private DNACache cache;
+    private Random rnd;
+
+    public DNACopyBenchmark(DNACopyType copyType) {
+        this.copyType = copyType;
+    }
+
+    @Override
+    public String getName() {
+        return "dna.copy." + copyType;
+    }
+
+    @Override
+    public boolean isPopulationDependent() {
+        return false;
+    }
+
+    @Override
+    public void setup(int population) {
+        rnd = new Random(BenchWorlds.SEED);
+        int[] genes = MovingEntityDNA.generateRandomGenes(MovingEntityDNA.TOTAL_GENES, rnd);
+        //Reproduction type gene is split evenly across the copy types.
+        genes[MovingEntityDNA.TOTAL_GENES - 1] = copyType.ordinal() * (256 / DNACopyType.values().length);
+        dna = new MovingEntityDNA(genes);
+        partner = BenchWorlds.randomMovingDNA(rnd).getGenome();
+        cache = new DNACache();
+    }
+
+    @Override
+    public long run() {
+        return cache.get(dna.copyGenes(partner, rnd)).getColor();
+    }
+}
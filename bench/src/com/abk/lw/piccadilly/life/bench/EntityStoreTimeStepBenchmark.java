@@ -0,0 +1,57 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntity;
+
+/**
+ * The batched {@link EntityStore#timeStep()} pass over a population of
+ * moving entities, followed by movement of the entities that are due.
+ * Comparable to {@link MovingEntityTimeStepBenchmark}.
+ *
+ * @author kgilmer
+ *
+ */
+public class EntityStoreTimeStepBenchmark extends SimBenchmark {
+
+    private EntityStore store;
+
+    @Override
+    public String getName() {
+        return "entityStore.timeStep";
+    }
+
+    @Override
+    public void setup(int population) {
+        store = new EntityStore();
+        BenchWorlds.createMovingEntities(store, BenchWorlds.createWorld(), new ArrayList<ISimEntity>(),
+                population, new Random(BenchWorlds.SEED));
+    }
+
+    @Override
+    public long run() {
+        store.timeStep();
+
+        for (int k = 0; k < store.getDueMoveCount(); ++k)
+            ((MovingEntity) store.get(store.getDueMove(k))).move();
+
+        return store.size();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+
+/**
+ * {@link com.abk.lw.piccadilly.life.model.FixedEntity#timeStep()} over the
+ * whole population. One operation is one pass.
+ *
+ * @author kgilmer
+ *
+ */
+public class FixedEntityTimeStepBenchmark extends SimBenchmark {
+
+    private List<ISimEntity> entities;
+
+    @Override
+    public String getName() {
+        return "fixedEntity.timeStep";
+    }
+
+    @Override
+    public void setup(int population) {
+        entities = BenchWorlds.createFixedEntities(new EntityStore(), BenchWorlds.createWorld(), new ArrayList<ISimEntity>(),
+                population, new Random(BenchWorlds.SEED));
+    }
+
+    @Override
+    public long run() {
+        for (int i = 0; i < entities.size(); ++i)
+            entities.get(i).timeStep();
+
+        return entities.size();
+    }
+}
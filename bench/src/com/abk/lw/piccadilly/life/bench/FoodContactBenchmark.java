@@ -0,0 +1,84 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jbox2d.dynamics.World;
+import com.abk.lw.piccadilly.life.model.ContactEventBuffer;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntity;
+import com.abk.lw.piccadilly.life.model.SimEntityContactListener;
+
+/**
+ * One step of an enclosed world with as much food as moving entities, with
+ * solid or sensor food fixtures: entity ticks and movement, the physics step
+ * and contact resolution.  Compare the two to see what the solver saves when
+ * food contacts are not solved.
+ *
+ * @author kgilmer
+ *
+ */
+public class FoodContactBenchmark extends SimBenchmark {
+
+    private static final float STEP_IN_SECONDS = 1 / 50f;
+
+    private final boolean sensors;
+    private final ContactEventBuffer contacts = new ContactEventBuffer();
+    private final List<ISimEntity> babies = new ArrayList<ISimEntity>();
+    private World world;
+    private EntityStore store;
+
+    public FoodContactBenchmark(boolean sensors) {
+        this.sensors = sensors;
+    }
+
+    @Override
+    public String getName() {
+        return "world.step.food." + (sensors ? "sensor" : "solid");
+    }
+
+    @Override
+    public void setup(int population) {
+        Random rnd = new Random(BenchWorlds.SEED);
+        world = BenchWorlds.createWorld();
+        world.setContactListener(new SimEntityContactListener(contacts));
+        BenchWorlds.enclose(world);
+        store = new EntityStore();
+        contacts.clear();
+        babies.clear();
+        BenchWorlds.createMovingEntities(store, world, babies, population, rnd);
+        BenchWorlds.createFixedEntities(store, world, babies, population, rnd, sensors);
+    }
+
+    @Override
+    public long run() {
+        store.timeStep();
+
+        for (int k = 0; k < store.getDueMoveCount(); ++k)
+            ((MovingEntity) store.get(store.getDueMove(k))).move();
+
+        world.step(STEP_IN_SECONDS, 10, 5);
+
+        int n = contacts.size();
+        contacts.resolve(store);
+        babies.clear();
+
+        return n;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.ForceField;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+
+/**
+ * One {@link ForceField#apply(EntityStore)} pass over a population of moving
+ * entities, with gravity and a number of other fields split between attractors,
+ * repulsors and damping zones.  Run with several field counts to see the cost
+ * grow with entities times fields.
+ *
+ * @author kgilmer
+ *
+ */
+public class ForceFieldBenchmark extends SimBenchmark {
+
+    private final int fields;
+    private EntityStore store;
+    private ForceField forces;
+
+    /**
+     * @param fields number of fields besides gravity
+     */
+    public ForceFieldBenchmark(int fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public String getName() {
+        return "forceField.apply." + fields;
+    }
+
+    @Override
+    public void setup(int population) {
+        Random rnd = new Random(BenchWorlds.SEED);
+        store = new EntityStore();
+        BenchWorlds.createMovingEntities(store, BenchWorlds.createWorld(), new ArrayList<ISimEntity>(), population, rnd);
+
+        forces = new ForceField();
+        forces.setGravity(.1f, -.2f);
+        for (int i = 0; i < fields; ++i) {
+            float x = BenchWorlds.position(rnd);
+            float y = BenchWorlds.position(rnd);
+
+            switch (i % 3) {
+            case 0:
+                forces.addAttractor(x, y, 1f, 4f);
+                break;
+            case 1:
+                forces.addRepulsor(x, y, 1f, 2f);
+                break;
+            default:
+                forces.addDampingZone(x, y, 3f, .5f);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public long run() {
+        //The world isn't stepped, so forces add up on the bodies; harmless here.
+        return forces.apply(store);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.abk.lw.piccadilly.life.LineageLog;
+import com.abk.lw.piccadilly.life.model.DNACopyType;
+import com.abk.lw.piccadilly.life.model.Genome;
+import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+
+/**
+ * One birth and one death logged to a {@link LineageLog} writing to a file: the
+ * cost to the simulation thread, including waiting for the writer when it falls behind.
+ *
+ * @author kgilmer
+ *
+ */
+public class LineageLogBenchmark extends SimBenchmark {
+
+    private LineageLog log;
+    private File file;
+    private Genome genome;
+    private long tick;
+
+    @Override
+    public String getName() {
+        return "lineage.birthAndDeath";
+    }
+
+    @Override
+    public boolean isPopulationDependent() {
+        return false;
+    }
+
+    @Override
+    public void setup(int population) {
+        try {
+            if (log != null)
+                log.close();
+            if (file == null) {
+                file = File.createTempFile("bench", ".lineage");
+                file.deleteOnExit();
+            }
+            log = new LineageLog(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open lineage log", e);
+        }
+
+        genome = Genome.random(MovingEntityDNA.TOTAL_GENES, new Random(BenchWorlds.SEED));
+    }
+
+    @Override
+    public long run() {
+        tick++;
+        log.birth(tick, tick, tick + 1, DNACopyType.MUTATE, genome);
+        log.death(tick, tick, 0f);
+
+        return log.getRecordCount();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+import com.abk.lw.piccadilly.life.PiccadillyLifeModelRoot;
+
+/**
+ * One fixed step of {@link PiccadillyLifeModelRoot#update(long)}: entity ticks,
+ * dead sweep, physics, births and food respawn.
+ *
+ * @author kgilmer
+ *
+ */
+public class ModelUpdateBenchmark extends SimBenchmark {
+
+    private PiccadillyLifeModelRoot model;
+    private final long dt = PiccadillyLifeModelRoot.getStepInMillis();
+
+    @Override
+    public String getName() {
+        return "model.update";
+    }
+
+    @Override
+    public void setup(int population) {
+        model = new PiccadillyLifeModelRoot(population);
+    }
+
+    @Override
+    public long run() {
+        model.update(dt);
+        return model.getBirthCount();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.bench;
+
+/**
+ * A single benchmarked operation. The runner calls {@link #setup(int)} before
+ * each measurement iteration and then {@link #run()} repeatedly.
+ *
+ * @author kgilmer
+ *
+ */
+public abstract class SimBenchmark {
+
+    /**
+     * @return name used to select and report the benchmark.
+     */
+    public abstract String getName();
+
+    /**
+     * @return true if the benchmark should be run for each population size.
+     */
+    public boolean isPopulationDependent() {
+        return true;
+    }
+
+    /**
+     * Build fresh state for a measurement iteration.
+     *
+     * @param population number of entities to create.
+     */
+    public abstract void setup(int population);
+
+    /**
+     * Execute one operation.
+     *
+     * @return a value derived from the work done, so it can't be optimized away.
+     */
+    public abstract long run();
+}
@@ -0,0 +1,76 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import com.abk.lw.piccadilly.life.model.Genome;
+
+/**
+ * How well a genome did in the trials of a {@link GenomeFitnessEvaluator}, averaged
+ * over the trials.  Only the entity grown from the genome in each trial is counted,
+ * not its descendants.
+ *
+ * @author kgilmer
+ *
+ */
+public final class GenomeFitness {
+    private final Genome genome;
+    private final double lifetime;
+    private final double energyGathered;
+    private final double offspring;
+
+    GenomeFitness(Genome genome, double lifetime, double energyGathered, double offspring) {
+        this.genome = genome;
+        this.lifetime = lifetime;
+        this.energyGathered = energyGathered;
+        this.offspring = offspring;
+    }
+
+    /**
+     * @return the genome evaluated.
+     */
+    public Genome getGenome() {
+        return genome;
+    }
+
+    /**
+     * @return ticks the entity lived, at most the length of a trial.
+     */
+    public double getLifetime() {
+        return lifetime;
+    }
+
+    /**
+     * @return energy the entity took from food.
+     */
+    public double getEnergyGathered() {
+        return energyGathered;
+    }
+
+    /**
+     * @return number of children the entity had.
+     */
+    public double getOffspring() {
+        return offspring;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "lifetime " + lifetime + " energy " + energyGathered + " offspring " + offspring;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.Genome;
+import com.abk.lw.piccadilly.life.model.MovingEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+
+/**
+ * Scores genomes offline by running each through a number of short headless
+ * trials, in parallel.
+ *
+ * A trial is a fresh world with the standard food and a single founder grown from
+ * the genome, stepped until the founder dies or the trial ends.  Only the founder
+ * is scored: its lifetime, the energy it took from food and the number of children
+ * it had.  Its offspring carry copied, often mutated or combined genes, so what they
+ * do is not credited to the genome.  Trial i of every genome uses the same world
+ * seed, so genomes are compared on the same food.
+ * Results are cached by genome, so a genome already evaluated by this evaluator
+ * is not run again.
+ *
+ * Usage: GenomeFitnessEvaluator [genomes] [trials] [trialTicks] [seed]
+ *
+ * @author kgilmer
+ *
+ */
+public class GenomeFitnessEvaluator {
+
+    private static final int DEFAULT_GENOMES = 100;
+    private static final int DEFAULT_TRIALS = 4;
+    private static final long DEFAULT_TRIAL_TICKS = 5000;
+
+    private final int trials;
+    private final long trialTicks;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private final Map<Genome, GenomeFitness> cache = new ConcurrentHashMap<Genome, GenomeFitness>();
+
+    /**
+     * @param trials number of trials per genome
+     * @param trialTicks most ticks each trial runs for
+     * @param seed seed the trial worlds are created from
+     */
+    public GenomeFitnessEvaluator(int trials, long trialTicks, long seed) {
+        if (trials < 1)
+            throw new IllegalArgumentException("trials must be at least 1");
+
+        if (trialTicks < 1)
+            throw new IllegalArgumentException("trialTicks must be at least 1");
+
+        this.trials = trials;
+        this.trialTicks = trialTicks;
+        this.seed = seed;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Evaluate a batch of genomes.  Genomes not in the cache are run and added to it.
+     *
+     * @param batch
+     * @return fitness of each genome, in the order of the batch
+     */
+    public List<GenomeFitness> evaluate(List<MovingEntityDNA> batch) {
+        //Each genome new to the cache is run once, however often it appears in the batch.
+        Map<Genome, List<Future<double[]>>> pending = new LinkedHashMap<Genome, List<Future<double[]>>>();
+
+        for (int i = 0; i < batch.size(); ++i) {
+            Genome genome = batch.get(i).getGenome();
+
+            if (cache.containsKey(genome) || pending.containsKey(genome))
+                continue;
+
+            List<Future<double[]>> results = new ArrayList<Future<double[]>>(trials);
+            for (int t = 0; t < trials; ++t)
+                results.add(pool.submit(createTrial(genome, seed + t)));
+
+            pending.put(genome, results);
+        }
+
+        try {
+            for (Map.Entry<Genome, List<Future<double[]>>> e : pending.entrySet())
+                cache.put(e.getKey(), average(e.getKey(), e.getValue()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while trials were running", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Trial failed", e.getCause());
+        }
+
+        List<GenomeFitness> fitness = new ArrayList<GenomeFitness>(batch.size());
+        for (int i = 0; i < batch.size(); ++i)
+            fitness.add(cache.get(batch.get(i).getGenome()));
+
+        return fitness;
+    }
+
+    private GenomeFitness average(Genome genome, List<Future<double[]>> results) throws InterruptedException, ExecutionException {
+        double lifetime = 0;
+        double energy = 0;
+        double offspring = 0;
+
+        for (int t = 0; t < results.size(); ++t) {
+            double[] r = results.get(t).get();
+            lifetime += r[0];
+            energy += r[1];
+            offspring += r[2];
+        }
+
+        return new GenomeFitness(genome, lifetime / trials, energy / trials, offspring / trials);
+    }
+
+    /**
+     * @return a trial of the genome, returning its founder's lifetime, energy gathered and offspring.
+     */
+    private Callable<double[]> createTrial(final Genome genome, final long worldSeed) {
+        return new Callable<double[]>() {
+            @Override
+            public double[] call() {
+                PiccadillyLifeModelRoot model = new PiccadillyLifeModelRoot(0, worldSeed);
+                model.immigrate(Collections.singletonList(genome));
+                MovingEntity founder = findFounder(model.getEntites());
+
+                //The founder leaves the store when it dies, and its handle is cleared.
+                long t = 0;
+                while (t < trialTicks && founder.getHandle() >= 0) {
+                    model.step();
+                    t++;
+                }
+
+                return new double[] { t, founder.getEnergyGathered(), founder.getOffspringCount() };
+            }
+        };
+    }
+
+    /**
+     * @return the only moving entity in a trial world that was just created.
+     */
+    private static MovingEntity findFounder(EntityStore store) {
+        for (int i = 0; i < store.size(); ++i) {
+            if (!store.getAt(i).isStatic())
+                return (MovingEntity) store.getAt(i);
+        }
+
+        throw new IllegalStateException("Trial world has no founder");
+    }
+
+    /**
+     * @return number of genomes evaluated so far.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GENOMES;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TRIALS;
+        long trialTicks = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TRIAL_TICKS;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        Random rnd = new Random(seed);
+        List<MovingEntityDNA> batch = new ArrayList<MovingEntityDNA>(count);
+        for (int i = 0; i < count; ++i)
+            batch.add(new MovingEntityDNA(Genome.random(MovingEntityDNA.TOTAL_GENES, rnd)));
+
+        GenomeFitnessEvaluator evaluator = new GenomeFitnessEvaluator(trials, trialTicks, seed);
+        List<GenomeFitness> fitness;
+        long start = System.nanoTime();
+
+        try {
+            fitness = new ArrayList<GenomeFitness>(evaluator.evaluate(batch));
+        } finally {
+            evaluator.shutdown();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        Collections.sort(fitness, new Comparator<GenomeFitness>() {
+            @Override
+            public int compare(GenomeFitness a, GenomeFitness b) {
+                return Double.compare(b.getEnergyGathered(), a.getEnergyGathered());
+            }
+        });
+
+        System.out.println("seed " + seed
+                + " genomes " + count
+                + " trials " + trials
+                + " trial ticks " + trialTicks
+                + " ms " + elapsed / 1000000L);
+
+        for (int i = 0; i < Math.min(10, fitness.size()); ++i)
+            System.out.println(fitness.get(i));
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Record of every input a world received, each stamped with the tick it was
+ * applied before.  Together with the world's seed and initial population this
+ * is enough to replay a run exactly, see {@link #replay(PiccadillyLifeModelRoot, long)}.
+ *
+ * A journal is started on a new world with {@link PiccadillyLifeModelRoot#startJournal()},
+ * which then records its own inputs.  Inputs are kept in memory and written out
+ * whole with {@link #write(OutputStream, long)}, or, for runs of unbounded length,
+ * streamed to a file as they come in with {@link #streamTo(OutputStream)}, which
+ * keeps no more than a chunk of inputs in memory.
+ *
+ * @author kgilmer
+ *
+ */
+public class InputJournal {
+    public static final byte USER_ACTION_START = 0;
+    public static final byte USER_ACTION_UPDATE = 1;
+    public static final byte USER_ACTION_END = 2;
+    public static final byte WORLD_FORCE = 3;
+    public static final byte FOOD_SENSORS = 4;
+    public static final byte ADD_ATTRACTOR = 5;
+    public static final byte ADD_REPULSOR = 6;
+    public static final byte ADD_DAMPING_ZONE = 7;
+    public static final byte CLEAR_FORCE_FIELDS = 8;
+
+    /**
+     * Marks the end of a journal; its tick is the tick the recorded world had reached.
+     */
+    private static final byte END = -1;
+
+    private static final int MAGIC = 0x504C494A;
+    /**
+     * Version 2 added two more values to each input, for force fields.  Version 3
+     * replaced the input count in the header with an END input, so a journal can
+     * be streamed, and read back even if the stream was cut short.
+     */
+    private static final int VERSION = 3;
+    private static final int DEFAULT_CAPACITY = 256;
+    /**
+     * Inputs kept in memory while streaming, before they are written out.
+     */
+    private static final int STREAM_CHUNK = 1024;
+
+    private final long seed;
+    private final int movingBodies;
+    private long endTick;
+
+    private long[] ticks;
+    private byte[] types;
+    private int[] pointerIds;
+    private float[] xs;
+    private float[] ys;
+    private float[] zs;
+    private float[] ws;
+    private int count;
+
+    /*
+     * While streaming: where inputs are written, how many have been, and the error
+     * that stopped streaming, if any.
+     */
+    private DataOutputStream stream;
+    private int streamed;
+    private IOException streamError;
+
+    /**
+     * @param seed seed of the world
+     * @param movingBodies initial population of the world
+     */
+    public InputJournal(long seed, int movingBodies) {
+        this.seed = seed;
+        this.movingBodies = movingBodies;
+        ticks = new long[DEFAULT_CAPACITY];
+        types = new byte[DEFAULT_CAPACITY];
+        pointerIds = new int[DEFAULT_CAPACITY];
+        xs = new float[DEFAULT_CAPACITY];
+        ys = new float[DEFAULT_CAPACITY];
+        zs = new float[DEFAULT_CAPACITY];
+        ws = new float[DEFAULT_CAPACITY];
+    }
+
+    void record(long tick, byte type, int pointerId, float x, float y) {
+        record(tick, type, pointerId, x, y, 0f, 0f);
+    }
+
+    void record(long tick, byte type, int pointerId, float x, float y, float z, float w) {
+        if (streamError != null)
+            return;
+
+        if (stream != null && count >= STREAM_CHUNK)
+            writeChunk();
+
+        if (count == ticks.length) {
+            int capacity = count * 2;
+            ticks = Arrays.copyOf(ticks, capacity);
+            types = Arrays.copyOf(types, capacity);
+            pointerIds = Arrays.copyOf(pointerIds, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+            ws = Arrays.copyOf(ws, capacity);
+        }
+
+        ticks[count] = tick;
+        types[count] = type;
+        pointerIds[count] = pointerId;
+        xs[count] = x;
+        ys[count] = y;
+        zs[count] = z;
+        ws[count] = w;
+        count++;
+        endTick = tick;
+    }
+
+    /**
+     * Write inputs to a stream from now on, starting with those already recorded.
+     * Inputs are written a chunk at a time; call {@link #flush()} to write those
+     * still in memory.  The journal can then no longer be replayed or written
+     * whole, only read back from what was streamed.  The stream is not closed.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void streamTo(OutputStream out) throws IOException {
+        if (stream != null)
+            throw new IllegalStateException("Journal is already streaming");
+
+        stream = new DataOutputStream(out);
+        writeHeader(stream);
+        writeChunk();
+        if (streamError != null)
+            throw streamError;
+    }
+
+    /**
+     * Write inputs still in memory to the stream, and flush it.
+     *
+     * @throws IOException if this or an earlier write to the stream failed, after
+     * which no more inputs are recorded
+     */
+    public void flush() throws IOException {
+        if (stream == null)
+            throw new IllegalStateException("Journal is not streaming");
+
+        writeChunk();
+        if (streamError == null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                streamError = e;
+            }
+        }
+
+        if (streamError != null)
+            throw streamError;
+    }
+
+    private void writeChunk() {
+        try {
+            for (int i = 0; i < count; ++i)
+                writeInput(stream, i);
+            streamed += count;
+            count = 0;
+
+            //Don't hold on to a grown buffer.
+            if (ticks.length > STREAM_CHUNK) {
+                ticks = new long[STREAM_CHUNK];
+                types = new byte[STREAM_CHUNK];
+                pointerIds = new int[STREAM_CHUNK];
+                xs = new float[STREAM_CHUNK];
+                ys = new float[STREAM_CHUNK];
+                zs = new float[STREAM_CHUNK];
+                ws = new float[STREAM_CHUNK];
+            }
+        } catch (IOException e) {
+            streamError = e;
+            count = 0;
+        }
+    }
+
+    /**
+     * @return seed of the recorded world.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return initial population of the recorded world.
+     */
+    public int getMovingBodies() {
+        return movingBodies;
+    }
+
+    /**
+     * @return tick the recorded world had reached when the journal was written,
+     * or the tick of the last input if it hasn't been written.
+     */
+    public long getEndTick() {
+        return endTick;
+    }
+
+    /**
+     * @return number of inputs recorded, including those streamed.
+     */
+    public int size() {
+        return streamed + count;
+    }
+
+    /**
+     * @return a new world in the state the recorded world started in.
+     */
+    public PiccadillyLifeModelRoot createModel() {
+        return new PiccadillyLifeModelRoot(movingBodies, seed);
+    }
+
+    /**
+     * Step a world created with {@link #createModel()}, applying every input
+     * before the tick it was recorded at.
+     *
+     * @param model world, still at the tick the recording started from
+     * @param ticks number of steps to take
+     */
+    public void replay(PiccadillyLifeModelRoot model, long ticks) {
+        if (stream != null)
+            throw new IllegalStateException("A streamed journal must be read back to be replayed");
+
+        int next = 0;
+
+        while (next < count && this.ticks[next] < model.getTick())
+            next++;
+
+        for (long t = 0; t < ticks; ++t) {
+            while (next < count && this.ticks[next] == model.getTick())
+                apply(model, next++);
+
+            model.step();
+        }
+    }
+
+    private void apply(PiccadillyLifeModelRoot model, int i) {
+        switch (types[i]) {
+            case USER_ACTION_START:
+                model.userActionStart(pointerIds[i], xs[i], ys[i]);
+                break;
+            case USER_ACTION_UPDATE:
+                model.userActionUpdate(pointerIds[i], xs[i], ys[i]);
+                break;
+            case USER_ACTION_END:
+                model.userActionEnd(pointerIds[i], xs[i], ys[i]);
+                break;
+            case WORLD_FORCE:
+                model.worldForce(xs[i], ys[i]);
+                break;
+            case FOOD_SENSORS:
+                model.setFoodSensors(pointerIds[i] != 0);
+                break;
+            case ADD_ATTRACTOR:
+                model.addAttractor(xs[i], ys[i], zs[i], ws[i]);
+                break;
+            case ADD_REPULSOR:
+                model.addRepulsor(xs[i], ys[i], zs[i], ws[i]);
+                break;
+            case ADD_DAMPING_ZONE:
+                model.addDampingZone(xs[i], ys[i], zs[i], ws[i]);
+                break;
+            case CLEAR_FORCE_FIELDS:
+                model.clearForceFields();
+                break;
+            default:
+                throw new IllegalStateException("Unknown input type " + types[i]);
+        }
+    }
+
+    /**
+     * Write the journal.  The stream is not closed.
+     *
+     * @param out
+     * @param endTick tick the recorded world has reached
+     * @throws IOException
+     */
+    public void write(OutputStream out, long endTick) throws IOException {
+        if (stream != null)
+            throw new IllegalStateException("A streamed journal can't be written whole");
+
+        DataOutputStream dos = new DataOutputStream(out);
+
+        writeHeader(dos);
+        for (int i = 0; i < count; ++i)
+            writeInput(dos, i);
+        writeEnd(dos, endTick);
+        dos.flush();
+    }
+
+    private void writeHeader(DataOutputStream dos) throws IOException {
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeLong(seed);
+        dos.writeInt(movingBodies);
+    }
+
+    private void writeInput(DataOutputStream dos, int i) throws IOException {
+        dos.writeLong(ticks[i]);
+        dos.writeByte(types[i]);
+        dos.writeInt(pointerIds[i]);
+        dos.writeFloat(xs[i]);
+        dos.writeFloat(ys[i]);
+        dos.writeFloat(zs[i]);
+        dos.writeFloat(ws[i]);
+    }
+
+    private static void writeEnd(DataOutputStream dos, long endTick) throws IOException {
+        dos.writeLong(endTick);
+        dos.writeByte(END);
+        dos.writeInt(0);
+        dos.writeFloat(0f);
+        dos.writeFloat(0f);
+        dos.writeFloat(0f);
+        dos.writeFloat(0f);
+    }
+
+    /**
+     * Read a journal written by {@link #write(OutputStream, long)} or streamed with
+     * {@link #streamTo(OutputStream)}.  A streamed journal that was cut short ends
+     * at its last complete input.  The stream is not closed.
+     *
+     * @param in
+     * @return journal
+     * @throws IOException if the stream doesn't hold a journal
+     */
+    public static InputJournal read(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+
+        if (dis.readInt() != MAGIC)
+            throw new IOException("Not an input journal");
+
+        int version = dis.readInt();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported input journal version " + version);
+
+        InputJournal journal = new InputJournal(dis.readLong(), dis.readInt());
+
+        if (version == VERSION) {
+            readInputs(dis, journal);
+            return journal;
+        }
+
+        long endTick = dis.readLong();
+        int n = dis.readInt();
+
+        for (int i = 0; i < n; ++i) {
+            if (version == 1)
+                journal.record(dis.readLong(), dis.readByte(), dis.readInt(), dis.readFloat(), dis.readFloat());
+            else
+                journal.record(dis.readLong(), dis.readByte(), dis.readInt(), dis.readFloat(), dis.readFloat(), dis.readFloat(), dis.readFloat());
+        }
+
+        journal.endTick = endTick;
+
+        return journal;
+    }
+
+    private static void readInputs(DataInputStream dis, InputJournal journal) throws IOException {
+        while (true) {
+            long tick;
+            byte type;
+            int pointerId;
+            float x, y, z, w;
+
+            try {
+                tick = dis.readLong();
+                type = dis.readByte();
+                pointerId = dis.readInt();
+                x = dis.readFloat();
+                y = dis.readFloat();
+                z = dis.readFloat();
+                w = dis.readFloat();
+            } catch (EOFException e) {
+                //Cut short, end at the last complete input.
+                return;
+            }
+
+            if (type == END) {
+                journal.endTick = tick;
+                return;
+            }
+
+            journal.record(tick, type, pointerId, x, y, z, w);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+/**
+ * Touch and gravity input gathered from the UI and sensor threads, applied to the
+ * model by the simulation thread once per tick.
+ *
+ * Input is coalesced as it arrives: only the latest gravity reading and the latest
+ * position of each pointer are kept.  Pointers going down and up are kept in order,
+ * in a bounded queue.  If it is full, further pointers going down are dropped until
+ * the next tick, but a pointer going up never is: it is kept aside and applied after
+ * the queue, so no entity is left held by a pointer that was lifted.
+ * Nothing is allocated per event.
+ *
+ * @author kgilmer
+ *
+ */
+public class InputQueue {
+    private static final int MAX_PRESSES = 64;
+
+    /*
+     * Pending input, written by any thread under the queue's lock.
+     */
+    private final boolean[] pressDown = new boolean[MAX_PRESSES];
+    private final int[] pressPointer = new int[MAX_PRESSES];
+    private final float[] pressX = new float[MAX_PRESSES];
+    private final float[] pressY = new float[MAX_PRESSES];
+    private int pressCount;
+    private final boolean[] overflowUp = new boolean[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] overflowUpX = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] overflowUpY = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final boolean[] moved = new boolean[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] moveX = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] moveY = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private boolean gravityChanged;
+    private float gravityX;
+    private float gravityY;
+    private long dropped;
+
+    /*
+     * Input being applied, copied out of the pending input so the lock isn't held
+     * while the model is changed.  Only touched by the simulation thread.
+     */
+    private final boolean[] applyDown = new boolean[MAX_PRESSES];
+    private final int[] applyPointer = new int[MAX_PRESSES];
+    private final float[] applyX = new float[MAX_PRESSES];
+    private final float[] applyY = new float[MAX_PRESSES];
+    private final boolean[] applyMoved = new boolean[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] applyMoveX = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] applyMoveY = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final boolean[] applyOverflowUp = new boolean[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] applyOverflowUpX = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+    private final float[] applyOverflowUpY = new float[PiccadillyLifeModelRoot.MAX_POINTERS];
+
+    /**
+     * A pointer went down.
+     *
+     * @param pointerId 0 to MAX_POINTERS - 1, others are ignored
+     * @param x
+     * @param y
+     */
+    public synchronized void pointerDown(int pointerId, float x, float y) {
+        press(true, pointerId, x, y);
+    }
+
+    /**
+     * A pointer moved.  Replaces any earlier move of the pointer not yet applied.
+     * A move is also dropped when the pointer goes down or up after it.
+     *
+     * @param pointerId 0 to MAX_POINTERS - 1, others are ignored
+     * @param x
+     * @param y
+     */
+    public synchronized void pointerMove(int pointerId, float x, float y) {
+        if (pointerId < 0 || pointerId >= moved.length)
+            return;
+
+        moved[pointerId] = true;
+        moveX[pointerId] = x;
+        moveY[pointerId] = y;
+    }
+
+    /**
+     * A pointer went up.
+     *
+     * @param pointerId 0 to MAX_POINTERS - 1, others are ignored
+     * @param x
+     * @param y
+     */
+    public synchronized void pointerUp(int pointerId, float x, float y) {
+        press(false, pointerId, x, y);
+    }
+
+    /**
+     * A new gravity reading.  Replaces any earlier reading not yet applied.
+     *
+     * @param x
+     * @param y
+     */
+    public synchronized void gravity(float x, float y) {
+        gravityChanged = true;
+        gravityX = x;
+        gravityY = y;
+    }
+
+    private void press(boolean down, int pointerId, float x, float y) {
+        if (pointerId < 0 || pointerId >= moved.length)
+            return;
+
+        if (pressCount == MAX_PRESSES) {
+            if (down) {
+                dropped++;
+            } else {
+                moved[pointerId] = false;
+                overflowUp[pointerId] = true;
+                overflowUpX[pointerId] = x;
+                overflowUpY[pointerId] = y;
+            }
+            return;
+        }
+
+        //Moves are applied after presses, so drop any that came before this one.
+        moved[pointerId] = false;
+        pressDown[pressCount] = down;
+        pressPointer[pressCount] = pointerId;
+        pressX[pressCount] = x;
+        pressY[pressCount] = y;
+        pressCount++;
+    }
+
+    /**
+     * @return number of pointers going down dropped because the queue was full.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Apply all pending input to the model: pointers going down and up in the order
+     * they happened, then pointers that went up once the queue was full, then the
+     * latest position of each pointer since it last went down or up, then the latest
+     * gravity reading.  Call from the simulation thread, between steps.
+     *
+     * @param model
+     */
+    public void applyTo(PiccadillyLifeModelRoot model) {
+        int presses;
+        boolean gravity;
+        float gx;
+        float gy;
+
+        synchronized (this) {
+            presses = pressCount;
+            System.arraycopy(pressDown, 0, applyDown, 0, presses);
+            System.arraycopy(pressPointer, 0, applyPointer, 0, presses);
+            System.arraycopy(pressX, 0, applyX, 0, presses);
+            System.arraycopy(pressY, 0, applyY, 0, presses);
+            pressCount = 0;
+
+            for (int i = 0; i < moved.length; ++i) {
+                applyMoved[i] = moved[i];
+                applyMoveX[i] = moveX[i];
+                applyMoveY[i] = moveY[i];
+                moved[i] = false;
+                applyOverflowUp[i] = overflowUp[i];
+                applyOverflowUpX[i] = overflowUpX[i];
+                applyOverflowUpY[i] = overflowUpY[i];
+                overflowUp[i] = false;
+            }
+
+            gravity = gravityChanged;
+            gx = gravityX;
+            gy = gravityY;
+            gravityChanged = false;
+        }
+
+        for (int i = 0; i < presses; ++i) {
+            if (applyDown[i])
+                model.userActionStart(applyPointer[i], applyX[i], applyY[i]);
+            else
+                model.userActionEnd(applyPointer[i], applyX[i], applyY[i]);
+        }
+
+        for (int i = 0; i < applyOverflowUp.length; ++i) {
+            if (applyOverflowUp[i])
+                model.userActionEnd(i, applyOverflowUpX[i], applyOverflowUpY[i]);
+        }
+
+        for (int i = 0; i < applyMoved.length; ++i) {
+            if (applyMoved[i])
+                model.userActionUpdate(i, applyMoveX[i], applyMoveY[i]);
+        }
+
+        if (gravity)
+            model.worldForce(gx, gy);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.abk.lw.piccadilly.life.model.DNACopyType;
+import com.abk.lw.piccadilly.life.model.Genome;
+
+/**
+ * Append-only binary log of every birth, death and emigration in a world, for analysing its
+ * evolution afterwards.
+ *
+ * Records are written into a buffer on the simulation thread.  Full buffers are
+ * handed to a background thread which writes them out, so logging costs the
+ * simulation thread a few memory writes per record and a hand-over per buffer,
+ * never a system call of its own.  If the writer falls behind by every buffer,
+ * the simulation thread waits for it.
+ *
+ * The log is little-endian: a header of magic and version ints, then records,
+ * each starting with its type byte.
+ * <ul>
+ * <li>BIRTH: tick long, parent ID long, child ID long, copy type byte, genome length
+ * short, genes.  Entities that weren't born in the world, the initial population and
+ * immigrants, are logged with parent ID {@link #NO_PARENT} and copy type -1.</li>
+ * <li>DEATH: tick long, ID long, final energy float.</li>
+ * <li>EMIGRATION: as DEATH, for an entity that left the world alive to join another.</li>
+ * </ul>
+ * IDs are those of {@link com.abk.lw.piccadilly.life.model.EntityStore#getId(int)}.
+ *
+ * @author kgilmer
+ *
+ */
+public class LineageLog implements Closeable {
+    public static final byte BIRTH = 0;
+    public static final byte DEATH = 1;
+    public static final byte EMIGRATION = 2;
+    public static final long NO_PARENT = -1;
+
+    private static final int MAGIC = 0x504C4C4C;
+    /**
+     * Version 2 added EMIGRATION records.
+     */
+    private static final int VERSION = 2;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 4;
+    private static final int BIRTH_SIZE = 1 + 8 + 8 + 8 + 1 + 2;
+    private static final int DEATH_SIZE = 1 + 8 + 8 + 4;
+
+    private final WritableByteChannel channel;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+    private final Thread writer;
+
+    /**
+     * Buffer being filled by the simulation thread.
+     */
+    private ByteBuffer current;
+    private long records;
+    private boolean closed;
+
+    /**
+     * Set by the writer thread if a write fails.  Later buffers are dropped.
+     */
+    private volatile IOException error;
+
+    /**
+     * @param file file to create, replacing any existing one
+     * @throws IOException
+     */
+    public LineageLog(File file) throws IOException {
+        this(new FileOutputStream(file).getChannel(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel channel to write to, closed with the log
+     * @param bufferSize size of each buffer, in bytes
+     */
+    public LineageLog(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < BIRTH_SIZE + 256)
+            throw new IllegalArgumentException("bufferSize too small");
+
+        this.channel = channel;
+        this.free = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+        this.full = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+
+        for (int i = 0; i < BUFFER_COUNT - 1; ++i)
+            free.add(ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+
+        current = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        current.putInt(MAGIC);
+        current.putInt(VERSION);
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBuffers();
+            }
+        }, LineageLog.class.getSimpleName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Log a birth.  Call from the simulation thread.
+     *
+     * @param tick
+     * @param parentId ID of the parent, or NO_PARENT
+     * @param childId ID of the new entity
+     * @param copyType how the parent's DNA was copied, or null if there is no parent
+     * @param genome genes of the new entity
+     */
+    public void birth(long tick, long parentId, long childId, DNACopyType copyType, Genome genome) {
+        ByteBuffer buf = reserve(BIRTH_SIZE + genome.length());
+
+        buf.put(BIRTH);
+        buf.putLong(tick);
+        buf.putLong(parentId);
+        buf.putLong(childId);
+        buf.put((byte) (copyType == null ? -1 : copyType.ordinal()));
+        buf.putShort((short) genome.length());
+        genome.writeTo(buf);
+        records++;
+    }
+
+    /**
+     * Log a death.  Call from the simulation thread.
+     *
+     * @param tick
+     * @param id ID of the entity
+     * @param energy energy the entity had left
+     */
+    public void death(long tick, long id, float energy) {
+        leave(DEATH, tick, id, energy);
+    }
+
+    /**
+     * Log an entity leaving the world alive.  Call from the simulation thread.
+     *
+     * @param tick
+     * @param id ID of the entity
+     * @param energy energy the entity had when it left
+     */
+    public void emigration(long tick, long id, float energy) {
+        leave(EMIGRATION, tick, id, energy);
+    }
+
+    private void leave(byte type, long tick, long id, float energy) {
+        ByteBuffer buf = reserve(DEATH_SIZE);
+
+        buf.put(type);
+        buf.putLong(tick);
+        buf.putLong(id);
+        buf.putFloat(energy);
+        records++;
+    }
+
+    /**
+     * @return number of records logged.
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Hand the records logged so far to the writer, without waiting for them to be
+     * written.  Call from the simulation thread.
+     */
+    public void flush() {
+        if (current.position() > 0)
+            handOver();
+    }
+
+    /**
+     * Write out every record and close the channel.  Call from the simulation
+     * thread, or once it has stopped.
+     *
+     * @throws IOException if any records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        flush();
+
+        //An empty buffer tells the writer to stop.
+        current.flip();
+        putFull(current);
+        current = null;
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        channel.close();
+
+        if (error != null)
+            throw error;
+    }
+
+    private ByteBuffer reserve(int size) {
+        if (closed)
+            throw new IllegalStateException("Log is closed");
+
+        if (current.remaining() < size)
+            handOver();
+
+        return current;
+    }
+
+    private void handOver() {
+        current.flip();
+        putFull(current);
+
+        try {
+            current = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the lineage log writer", e);
+        }
+    }
+
+    private void putFull(ByteBuffer buf) {
+        try {
+            full.put(buf);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the lineage log writer", e);
+        }
+    }
+
+    /**
+     * Writer thread: write each full buffer and return it, until an empty one arrives.
+     */
+    private void writeBuffers() {
+        try {
+            while (true) {
+                ByteBuffer buf = full.take();
+
+                if (!buf.hasRemaining())
+                    return;
+
+                if (error == null) {
+                    try {
+                        while (buf.hasRemaining())
+                            channel.write(buf);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+
+                buf.clear();
+                free.put(buf);
+            }
+        } catch (InterruptedException e) {
+            //Abandoned.
+        }
+    }
+}
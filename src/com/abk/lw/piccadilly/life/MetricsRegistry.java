@@ -0,0 +1,205 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Named counters and histograms, cheap enough to update every tick.
+ *
+ * Metrics are looked up by name once, when a component is given the registry, and
+ * updated through the returned objects.  Updates are lock-free and may come from any
+ * thread; a {@link MetricsReporter} reads them from its own.
+ *
+ * @author kgilmer
+ *
+ */
+public class MetricsRegistry {
+
+    /**
+     * A running total.
+     */
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Distribution of non-negative values, such as durations in nanoseconds or counts
+     * per step, in fixed power-of-two buckets: bucket 0 holds 0, bucket k holds values
+     * from 2^(k-1) to 2^k - 1.  Percentiles are reported as the upper bound of the
+     * bucket they fall in, so are accurate to within a factor of two.
+     */
+    public static final class Histogram {
+        static final int BUCKETS = 64;
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param value value to record, negative values are recorded as 0
+         */
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value))
+                ;
+        }
+
+        /**
+         * Copy the distribution recorded since the last drain and start afresh.
+         * Values recorded while draining may be counted in either interval.
+         *
+         * @param out
+         */
+        public void drainTo(Snapshot out) {
+            for (int i = 0; i < BUCKETS; ++i)
+                out.buckets[i] = buckets.getAndSet(i, 0);
+
+            out.count = count.getAndSet(0);
+            out.sum = sum.getAndSet(0);
+            out.max = max.getAndSet(0);
+        }
+    }
+
+    /**
+     * A histogram's values over one reporting interval.
+     */
+    public static final class Snapshot {
+        final long[] buckets = new long[Histogram.BUCKETS];
+        long count;
+        long sum;
+        long max;
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        /**
+         * @param p percentile, 0 - 1
+         * @return upper bound of the bucket the percentile falls in, at most the maximum.
+         */
+        public long getPercentile(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+
+            for (int i = 0; i < Histogram.BUCKETS; ++i) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0)
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+            }
+
+            return max;
+        }
+    }
+
+    private final Map<String, Counter> counters = new LinkedHashMap<String, Counter>();
+    private final Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+
+    /**
+     * @param name
+     * @return the counter with name, created if it doesn't exist.
+     */
+    public synchronized Counter counter(String name) {
+        Counter c = counters.get(name);
+
+        if (c == null) {
+            c = new Counter(name);
+            counters.put(name, c);
+        }
+
+        return c;
+    }
+
+    /**
+     * @param name
+     * @return the histogram with name, created if it doesn't exist.
+     */
+    public synchronized Histogram histogram(String name) {
+        Histogram h = histograms.get(name);
+
+        if (h == null) {
+            h = new Histogram(name);
+            histograms.put(name, h);
+        }
+
+        return h;
+    }
+
+    /**
+     * @return all counters, in the order they were created.
+     */
+    public synchronized List<Counter> getCounters() {
+        return new ArrayList<Counter>(counters.values());
+    }
+
+    /**
+     * @return all histograms, in the order they were created.
+     */
+    public synchronized List<Histogram> getHistograms() {
+        return new ArrayList<Histogram>(histograms.values());
+    }
+}
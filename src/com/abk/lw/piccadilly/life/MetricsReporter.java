@@ -0,0 +1,156 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Appends a snapshot of every metric in a registry to a text file at a fixed
+ * interval, from its own thread.
+ *
+ * Each report starts with a "report" line holding the wall clock time and the
+ * interval length in milliseconds.  Then for each counter:
+ *
+ *     counter name total rate/sec
+ *
+ * and for each histogram, over the interval since the previous report:
+ *
+ *     histogram name count mean p50 p90 p99 max
+ *
+ * Once the file reaches MAX_FILE_SIZE it is renamed with a ".1" suffix, replacing
+ * any older one, and a new file is started.
+ *
+ * @author kgilmer
+ *
+ */
+public class MetricsReporter extends Thread {
+
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    private final MetricsRegistry registry;
+    private final File file;
+    private final long intervalMillis;
+    private final MetricsRegistry.Snapshot snapshot = new MetricsRegistry.Snapshot();
+    private final Map<MetricsRegistry.Counter, Long> lastTotals = new HashMap<MetricsRegistry.Counter, Long>();
+    private long lastReport;
+    private volatile boolean running = true;
+
+    /**
+     * @param registry
+     * @param file file to append reports to
+     * @param intervalMillis time between reports
+     */
+    public MetricsReporter(MetricsRegistry registry, File file, long intervalMillis) {
+        super(MetricsReporter.class.getSimpleName());
+
+        if (intervalMillis < 1)
+            throw new IllegalArgumentException("intervalMillis must be at least 1");
+
+        this.registry = registry;
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        this.lastReport = System.currentTimeMillis();
+        setDaemon(true);
+    }
+
+    /**
+     * Write a final report and stop the thread.
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                //Shutting down, report what was gathered so far.
+            }
+
+            try {
+                report();
+            } catch (IOException e) {
+                //Metrics are best effort, try again next interval.
+            }
+        }
+    }
+
+    /**
+     * Append one report to the file.
+     *
+     * @throws IOException
+     */
+    public synchronized void report() throws IOException {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - lastReport);
+        lastReport = now;
+
+        if (file.length() >= MAX_FILE_SIZE) {
+            File old = new File(file.getPath() + ".1");
+            old.delete();
+            if (!file.renameTo(old))
+                throw new IOException("Unable to rotate " + file);
+        }
+
+        Writer out = new BufferedWriter(new FileWriter(file, true));
+        try {
+            out.write("report " + now + " " + elapsed + "\n");
+
+            List<MetricsRegistry.Counter> counters = registry.getCounters();
+            for (int i = 0; i < counters.size(); ++i) {
+                MetricsRegistry.Counter c = counters.get(i);
+                long total = c.get();
+                Long last = lastTotals.put(c, total);
+                double rate = (total - (last == null ? 0 : last)) * 1000.0 / elapsed;
+
+                out.write("counter " + c.getName() + " " + total + " " + String.format(Locale.US, "%.2f", rate) + "\n");
+            }
+
+            List<MetricsRegistry.Histogram> histograms = registry.getHistograms();
+            for (int i = 0; i < histograms.size(); ++i) {
+                MetricsRegistry.Histogram h = histograms.get(i);
+                h.drainTo(snapshot);
+
+                out.write("histogram " + h.getName()
+                        + " " + snapshot.getCount()
+                        + " " + String.format(Locale.US, "%.1f", snapshot.getMean())
+                        + " " + snapshot.getPercentile(.5)
+                        + " " + snapshot.getPercentile(.9)
+                        + " " + snapshot.getPercentile(.99)
+                        + " " + snapshot.getMax() + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
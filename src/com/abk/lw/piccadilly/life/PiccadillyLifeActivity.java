@@ -15,18 +15,24 @@
  */
 package com.abk.lw.piccadilly.life;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import android.app.Activity;
 import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.os.AsyncTask;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
-import android.os.SystemClock;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
@@ -36,10 +42,34 @@ import android.view.Window;
  * @author kgilmer
  *
  */
-public class PiccadillyLifeActivity extends Activity implements Handler.Callback, OnTouchListener, SensorEventListener {
+public class PiccadillyLifeActivity extends Activity implements PiccadillyLifeSimulationThread.FrameListener, OnTouchListener, SensorEventListener {
 	
 	private static final String TAG = PiccadillyLifeActivity.class.getSimpleName();
 	
+	/**
+	 * File the inputs of the current run are streamed to, for replay with PiccadillyLifeReplayRunner.
+	 */
+	private static final String JOURNAL_FILE = "input.journal";
+	
+	/**
+	 * File the world is saved to whenever the activity is paused, and restored from on a fresh start.
+	 */
+	private static final String CHECKPOINT_FILE = "world.checkpoint";
+	
+	/**
+	 * Writes checkpoints to storage off the UI thread, one at a time and in order.
+	 * Shared by every instance, so a write begun before a configuration change
+	 * isn't overtaken by the next instance's.
+	 */
+	private static final ExecutorService checkpointWriter = Executors.newSingleThreadExecutor();
+	
+	/**
+	 * File metrics are appended to every METRICS_INTERVAL milliseconds, while
+	 * recording them is switched on from the menu.
+	 */
+	private static final String METRICS_FILE = "metrics.txt";
+	private static final long METRICS_INTERVAL = 10000;
+	
 	/**
 	 * Reference to model root
 	 */
@@ -50,14 +80,19 @@ public class PiccadillyLifeActivity extends Activity implements Handler.Callback
 	 */
 	private PiccadillyLifeView view;
 	
-	private Handler handler;
-	private static final int MESSAGE_ID = Integer.MIN_VALUE;
-	
-	private long lastUpdateTime;
+	/**
+	 * Thread that advances the model.  All model access goes through it.
+	 */
+	private PiccadillyLifeSimulationThread simulation;
 
     private SensorManager sensorManager;
 
     private Sensor gravitySensor;
+    
+    /**
+     * Writes metrics while they are being recorded, otherwise null.
+     */
+    private MetricsReporter metricsReporter;
 	
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -66,15 +101,25 @@ public class PiccadillyLifeActivity extends Activity implements Handler.Callback
 		this.requestWindowFeature(Window.FEATURE_NO_TITLE);
 		
 		model = (PiccadillyLifeModelRoot) getLastNonConfigurationInstance();
+		if (model == null)
+			model = restoreCheckpoint();
 		if (model == null) {
 			model = new PiccadillyLifeModelRoot();
+			startJournal();
 		}
 		view = new PiccadillyLifeView(this);
 		view.setOnTouchListener(this);
 		view.setModel(model);
+		view.setMetrics(model.getMetrics());
 		setContentView(view);
 		
-		handler = new Handler(this);
+		simulation = new PiccadillyLifeSimulationThread(model, this);
+		view.setSimulation(simulation);
+		simulation.start();
+		
+		//Keep recording if metrics were switched on before the activity was recreated.
+		if (model.getMetrics() != null)
+			startMetricsReporter();
 		
 		sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
 	    gravitySensor = sensorManager.getDefaultSensor(Sensor.TYPE_GRAVITY);
@@ -88,29 +133,184 @@ public class PiccadillyLifeActivity extends Activity implements Handler.Callback
 	@Override
 	protected void onResume() {
 		super.onResume();
-		handler.sendEmptyMessage(MESSAGE_ID);
-		lastUpdateTime = SystemClock.uptimeMillis();
+		simulation.resumeSimulation();
 		sensorManager.registerListener(this, gravitySensor, SensorManager.SENSOR_DELAY_NORMAL);
 	}
 	
 	@Override
 	protected void onPause() {
 		super.onPause();
-		handler.removeMessages(MESSAGE_ID);
+		simulation.pauseSimulation();
 		sensorManager.unregisterListener(this);
+		saveCheckpoint();
+		flushJournal();
+	}
+	
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		//The model may be handed to the next instance, so stop touching it here.
+		simulation.shutdown();
+		if (metricsReporter != null)
+			metricsReporter.shutdown();
+	}
+	
+	/**
+	 * Start or stop recording metrics of the model and view.
+	 * 
+	 * @param record
+	 */
+	private void setRecordMetrics(boolean record) {
+		if (record == (metricsReporter != null))
+			return;
+		
+		if (!record) {
+			metricsReporter.shutdown();
+			metricsReporter = null;
+		}
+		
+		//Metrics are switched between steps.
+		simulation.pauseSimulation();
+		model.setMetrics(record ? new MetricsRegistry() : null);
+		simulation.resumeSimulation();
+		
+		if (record)
+			startMetricsReporter();
+		else
+			view.setMetrics(null);
+	}
+	
+	private void startMetricsReporter() {
+		view.setMetrics(model.getMetrics());
+		metricsReporter = new MetricsReporter(model.getMetrics(), new File(getFilesDir(), METRICS_FILE), METRICS_INTERVAL);
+		metricsReporter.start();
+	}
+	
+	/**
+	 * Save the world, so the population survives the process being killed.  The
+	 * simulation must be paused.  Only copying the world is done here; the copy is
+	 * written to storage in the background.
+	 */
+	private void saveCheckpoint() {
+		long start = System.currentTimeMillis();
+		final ByteBuffer checkpoint = WorldCheckpoint.encode(model);
+		final long tick = model.getTick();
+		final File file = new File(getFilesDir(), CHECKPOINT_FILE);
+		final long encoded = System.currentTimeMillis() - start;
+		
+		checkpointWriter.execute(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				
+				try {
+					WorldCheckpoint.save(checkpoint, file);
+					Log.i(TAG, "Saved checkpoint at tick " + tick + ", copied in " + encoded + "ms, written in " + (System.currentTimeMillis() - start) + "ms");
+				} catch (IOException e) {
+					Log.e(TAG, "Unable to save checkpoint", e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return world restored from the last checkpoint, or null if there isn't a usable one.
+	 */
+	private PiccadillyLifeModelRoot restoreCheckpoint() {
+		File file = new File(getFilesDir(), CHECKPOINT_FILE);
+		
+		//An earlier instance in this process may still be writing its checkpoint.
+		try {
+			checkpointWriter.submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			//Nothing to fail.
+		}
+		
+		if (!file.exists())
+			return null;
+		
+		try {
+			return WorldCheckpoint.read(file);
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to restore checkpoint", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Record the inputs of a new world, streamed to a file so the journal of a long
+	 * run doesn't build up in memory.  The stream stays open as long as the world
+	 * lives, which may outlast this instance.
+	 */
+	private void startJournal() {
+		InputJournal journal = model.startJournal();
+		
+		try {
+			journal.streamTo(new BufferedOutputStream(openFileOutput(JOURNAL_FILE, Context.MODE_PRIVATE)));
+		} catch (IOException e) {
+			//The journal stops recording, so nothing builds up.
+			Log.e(TAG, "Unable to save input journal", e);
+		}
+	}
+	
+	/**
+	 * Write out the inputs of the run so far.  The simulation must be paused.
+	 */
+	private void flushJournal() {
+		InputJournal journal = model.getJournal();
+		
+		if (journal == null)
+			return;
+		
+		try {
+			journal.flush();
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to save input journal", e);
+		}
 	}
 
-	public boolean handleMessage(Message msg) {
-		if (msg.what == MESSAGE_ID) {
-			update();
-			handler.sendEmptyMessageDelayed(MESSAGE_ID, 10);
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.activity_main, menu);
+		return true;
+	}
+	
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		menu.findItem(R.id.menu_turbo).setChecked(simulation.isTurbo());
+		menu.findItem(R.id.menu_metrics).setChecked(metricsReporter != null);
+		return true;
+	}
+	
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == R.id.menu_turbo) {
+			simulation.setTurbo(!simulation.isTurbo());
+			Log.i(TAG, "turbo: " + simulation.isTurbo());
 			return true;
 		}
-		return false;
+		
+		if (item.getItemId() == R.id.menu_metrics) {
+			setRecordMetrics(metricsReporter == null);
+			Log.i(TAG, "metrics: " + (metricsReporter != null));
+			return true;
+		}
+		
+		return super.onOptionsItemSelected(item);
 	}
-	
-	private void update() {
-	    new UpdateWorldTask().execute(null, null, null);
+
+	/* (non-Javadoc)
+	 * @see com.abk.lw.piccadilly.life.PiccadillyLifeSimulationThread.FrameListener#onFrame()
+	 */
+	@Override
+	public void onFrame() {
+	    view.postInvalidate();
 	}
 	
 	public boolean onTouch(View v, MotionEvent event) {
@@ -122,7 +322,7 @@ public class PiccadillyLifeActivity extends Activity implements Handler.Callback
 		int pointerId = event.getPointerId(pointerIndex);
 		if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
 			Log.i(TAG, "down: " + pointerId + " " + x + " " + y);
-			model.userActionStart(pointerId, x, y);
+			simulation.getInputQueue().pointerDown(pointerId, x, y);
 		}
 		if (event.getAction() == MotionEvent.ACTION_MOVE) {
 			for (int i = 0; i < event.getPointerCount(); i++) {
@@ -130,39 +330,16 @@ public class PiccadillyLifeActivity extends Activity implements Handler.Callback
 				y = (event.getY(i) - v.getHeight() / 2) * viewportSize / v.getWidth();
 				pointerId = event.getPointerId(i);
 				//Log.i(TAG, "move: " + pointerId + " " + x + " " + y);
-				model.userActionUpdate(pointerId, x, y);
+				simulation.getInputQueue().pointerMove(pointerId, x, y);
 			}
 		}
 		if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP) {
 			Log.i(TAG, "up: " + pointerId + " " + x + " " + y);
-			model.userActionEnd(pointerId, x, y);
+			simulation.getInputQueue().pointerUp(pointerId, x, y);
 		}
 		return true;
 	}
 	
-	private class UpdateWorldTask extends AsyncTask<Void, Void, Void> {
-
-        /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
-         */
-        @Override
-        protected Void doInBackground(Void... params) {
-            long currentTime = SystemClock.uptimeMillis();
-            long elapsed = currentTime - lastUpdateTime;
-            lastUpdateTime = currentTime;
-            model.update(elapsed);
-            return null;
-        }
-	    
-        /* (non-Javadoc)
-         * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
-         */
-        @Override
-        protected void onPostExecute(Void result) {
-            view.invalidate();
-        }
-	}
-
     /* (non-Javadoc)
      * @see android.hardware.SensorEventListener#onAccuracyChanged(android.hardware.Sensor, int)
      */
@@ -179,6 +356,8 @@ public class PiccadillyLifeActivity extends Activity implements Handler.Callback
         float x = event.values[0];
         float y = event.values[1];
 
-        model.worldForce(y / 20f, x / 20f);
+        //Gravity now acts every step rather than once per reading, which arrive
+        //about every tenth step at SENSOR_DELAY_NORMAL; scale it to push as hard.
+        simulation.getInputQueue().gravity(y / 200f, x / 200f);
     }
 }
@@ -0,0 +1,102 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the simulation on a plain JVM, without a UI, as fast as possible.
+ *
+ * Usage: PiccadillyLifeHeadlessRunner [ticks] [reportInterval] [seed] [lineageFile]
+ *
+ * @author kgilmer
+ *
+ */
+public class PiccadillyLifeHeadlessRunner {
+
+    private static final long DEFAULT_TICKS = 100000;
+    private static final long DEFAULT_REPORT_INTERVAL = 10000;
+
+    private final PiccadillyLifeModelRoot model;
+
+    public PiccadillyLifeHeadlessRunner(PiccadillyLifeModelRoot model) {
+        this.model = model;
+    }
+
+    /**
+     * Advance the model by a number of fixed ticks.
+     *
+     * @param ticks number of ticks to run
+     * @param reportInterval print a progress line every this many ticks, 0 to disable.
+     * @return ticks per second achieved over the whole run
+     */
+    public double run(long ticks, long reportInterval) {
+        long start = System.nanoTime();
+        long intervalStart = start;
+
+        for (long t = 1; t <= ticks; ++t) {
+            model.step();
+
+            if (reportInterval > 0 && t % reportInterval == 0) {
+                long now = System.nanoTime();
+                report(t, reportInterval, now - intervalStart);
+                intervalStart = now;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        return ticks / (elapsed / 1e9);
+    }
+
+    private void report(long tick, long ticks, long elapsedNanos) {
+        System.out.println("tick " + tick
+                + " ticks/sec " + (long) (ticks / (elapsedNanos / 1e9))
+                + " moving " + model.getCensus().getMovingCount()
+                + " food " + model.getCensus().getFoodCount()
+                + " births " + model.getBirthCount()
+                + " deaths " + model.getDeathCount());
+    }
+
+    public static void main(String[] args) throws IOException {
+        long ticks = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_TICKS;
+        long reportInterval = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_REPORT_INTERVAL;
+        PiccadillyLifeModelRoot model = args.length > 2
+                ? new PiccadillyLifeModelRoot(PiccadillyLifeModelRoot.DEFAULT_MOVING_BODIES, Long.parseLong(args[2]))
+                : new PiccadillyLifeModelRoot();
+
+        LineageLog lineage = null;
+        if (args.length > 3) {
+            lineage = new LineageLog(new File(args[3]));
+            model.setLineageLog(lineage);
+        }
+
+        double tps;
+        try {
+            tps = new PiccadillyLifeHeadlessRunner(model).run(ticks, reportInterval);
+        } finally {
+            if (lineage != null)
+                lineage.close();
+        }
+
+        System.out.println("seed " + model.getSeed()
+                + " ticks " + ticks
+                + " ticks/sec " + (long) tps
+                + " births " + model.getBirthCount()
+                + " deaths " + model.getDeathCount());
+    }
+}
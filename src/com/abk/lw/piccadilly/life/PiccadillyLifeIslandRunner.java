@@ -0,0 +1,212 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.abk.lw.piccadilly.life.model.Genome;
+
+/**
+ * Evolves several independent worlds ("islands") in parallel on a plain JVM.
+ * Each island is advanced on its own worker for a number of ticks, then a share
+ * of every island's moving population migrates to the next island in a ring.
+ *
+ * Islands share nothing while they run, each has its own random source, so
+ * throughput grows with the number of cores.
+ *
+ * Usage: PiccadillyLifeIslandRunner [islands] [ticks] [migrationInterval] [migrationShare] [seed]
+ *
+ * @author kgilmer
+ *
+ */
+public class PiccadillyLifeIslandRunner {
+
+    private static final long DEFAULT_TICKS = 100000;
+    private static final long DEFAULT_MIGRATION_INTERVAL = 1000;
+    private static final float DEFAULT_MIGRATION_SHARE = .1f;
+
+    private final PiccadillyLifeModelRoot[] islands;
+    private final ForkJoinPool pool;
+    private final List<Callable<Void>> tasks;
+    private final List<List<Genome>> emigrants;
+    private final long migrationInterval;
+    private final float migrationShare;
+
+    /**
+     * Runs for this many ticks on every island before the next migration.
+     */
+    private long epochTicks;
+    private long migrations;
+
+    /**
+     * @param islands worlds to evolve, each owned by this runner
+     * @param migrationInterval ticks between migrations
+     * @param migrationShare fraction of each island's moving population that migrates, 0 - 1
+     */
+    public PiccadillyLifeIslandRunner(PiccadillyLifeModelRoot[] islands, long migrationInterval, float migrationShare) {
+        if (migrationInterval < 1)
+            throw new IllegalArgumentException("migrationInterval must be at least 1");
+
+        if (migrationShare < 0 || migrationShare > 1)
+            throw new IllegalArgumentException("migrationShare must be between 0 and 1");
+
+        this.islands = islands;
+        this.migrationInterval = migrationInterval;
+        this.migrationShare = migrationShare;
+        this.pool = new ForkJoinPool(Math.min(islands.length, Runtime.getRuntime().availableProcessors()));
+        this.tasks = new ArrayList<Callable<Void>>(islands.length);
+        this.emigrants = new ArrayList<List<Genome>>(islands.length);
+
+        for (int i = 0; i < islands.length; ++i) {
+            final PiccadillyLifeModelRoot island = islands[i];
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (long t = 0; t < epochTicks; ++t)
+                        island.step();
+
+                    return null;
+                }
+            });
+            emigrants.add(new ArrayList<Genome>());
+        }
+    }
+
+    /**
+     * Create islands of the default population, each seeded from seed.
+     *
+     * @param count number of islands
+     * @param seed
+     * @return islands
+     */
+    public static PiccadillyLifeModelRoot[] createIslands(int count, long seed) {
+        PiccadillyLifeModelRoot[] islands = new PiccadillyLifeModelRoot[count];
+
+        for (int i = 0; i < count; ++i)
+            islands[i] = new PiccadillyLifeModelRoot(PiccadillyLifeModelRoot.DEFAULT_MOVING_BODIES, seed + i);
+
+        return islands;
+    }
+
+    /**
+     * Advance every island by a number of ticks, migrating every migrationInterval ticks.
+     *
+     * @param ticks number of ticks to run on each island
+     * @return island ticks per second achieved over the whole run, summed over all islands
+     */
+    public double run(long ticks) {
+        long start = System.nanoTime();
+
+        for (long done = 0; done < ticks; done += epochTicks) {
+            epochTicks = Math.min(migrationInterval, ticks - done);
+
+            runEpoch();
+
+            if (done + epochTicks < ticks)
+                migrate();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        return ticks * islands.length / (elapsed / 1e9);
+    }
+
+    private void runEpoch() {
+        List<Future<Void>> results = pool.invokeAll(tasks);
+
+        try {
+            for (int i = 0; i < results.size(); ++i)
+                results.get(i).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while islands were running", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Island failed", e.getCause());
+        }
+    }
+
+    /**
+     * Every island sends its emigrants to the next island in the ring.  All islands
+     * are idle while this runs.
+     */
+    private void migrate() {
+        for (int i = 0; i < islands.length; ++i)
+            islands[i].emigrate(migrationShare, emigrants.get(i));
+
+        for (int i = 0; i < islands.length; ++i) {
+            List<Genome> l = emigrants.get(i);
+            islands[(i + 1) % islands.length].immigrate(l);
+            l.clear();
+        }
+
+        migrations++;
+    }
+
+    /**
+     * @return number of migrations performed.
+     */
+    public long getMigrationCount() {
+        return migrations;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long ticks = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_TICKS;
+        long migrationInterval = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MIGRATION_INTERVAL;
+        float migrationShare = args.length > 3 ? Float.parseFloat(args[3]) : DEFAULT_MIGRATION_SHARE;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+
+        PiccadillyLifeModelRoot[] islands = createIslands(count, seed);
+        PiccadillyLifeIslandRunner runner = new PiccadillyLifeIslandRunner(islands, migrationInterval, migrationShare);
+        double tps;
+
+        try {
+            tps = runner.run(ticks);
+        } finally {
+            runner.shutdown();
+        }
+
+        long births = 0;
+        long deaths = 0;
+        int moving = 0;
+        for (int i = 0; i < islands.length; ++i) {
+            births += islands[i].getBirthCount();
+            deaths += islands[i].getDeathCount();
+            moving += islands[i].getCensus().getMovingCount();
+        }
+
+        System.out.println("islands " + count
+                + " ticks " + ticks
+                + " island ticks/sec " + (long) tps
+                + " migrations " + runner.getMigrationCount()
+                + " moving " + moving
+                + " births " + births
+                + " deaths " + deaths);
+    }
+}
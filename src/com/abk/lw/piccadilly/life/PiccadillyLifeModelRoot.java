@@ -18,44 +18,117 @@ package com.abk.lw.piccadilly.life;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.CopyOnWriteArrayList;
 import org.jbox2d.callbacks.ContactFilter;
-import org.jbox2d.callbacks.ContactImpulse;
-import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.callbacks.QueryCallback;
 import org.jbox2d.collision.AABB;
-import org.jbox2d.collision.Manifold;
 import org.jbox2d.collision.shapes.PolygonShape;
 import org.jbox2d.common.Vec2;
 import org.jbox2d.dynamics.Body;
 import org.jbox2d.dynamics.BodyDef;
 import org.jbox2d.dynamics.Fixture;
 import org.jbox2d.dynamics.World;
-import org.jbox2d.dynamics.contacts.Contact;
 import org.jbox2d.dynamics.joints.MouseJoint;
 import org.jbox2d.dynamics.joints.MouseJointDef;
-import android.graphics.Color;
-import android.graphics.Point;
-import android.graphics.PointF;
+import com.abk.lw.piccadilly.life.model.BodyPool;
+import com.abk.lw.piccadilly.life.model.Colors;
+import com.abk.lw.piccadilly.life.model.ContactEventBuffer;
+import com.abk.lw.piccadilly.life.model.DNACache;
+import com.abk.lw.piccadilly.life.model.EntityStore;
 import com.abk.lw.piccadilly.life.model.FixedEntity;
+import com.abk.lw.piccadilly.life.model.ForceField;
+import com.abk.lw.piccadilly.life.model.FrameSnapshotBuffer;
+import com.abk.lw.piccadilly.life.model.Genome;
 import com.abk.lw.piccadilly.life.model.ISimEntity;
 import com.abk.lw.piccadilly.life.model.MovingEntity;
 import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+import com.abk.lw.piccadilly.life.model.PopulationCensus;
+import com.abk.lw.piccadilly.life.model.SimEntityContactListener;
 import com.abk.lw.piccadilly.life.model.StaticEntityDNA;
 
 public class PiccadillyLifeModelRoot {
-    private final static Random RND = new Random();
-
 	private static final String TAG = PiccadillyLifeModelRoot.class.getSimpleName();
 
+	/**
+	 * Source of all randomness in this world.  Each world has its own, so worlds run on
+	 * different threads don't contend on a shared generator, and a world can be recreated
+	 * exactly from its seed.
+	 */
+	private final Random rnd;
+	private final long seed;
+	private final int initialMovingBodies;
+	
+	/**
+	 * Inputs applied to this world, or null if not recording.
+	 */
+	private InputJournal journal;
+	
+	/**
+	 * Births and deaths are logged here, or null if not logging.
+	 */
+	private LineageLog lineage;
+	
+	/*
+	 * Step metrics, all null if not measuring.
+	 */
+	private static final String[] PHASE_NAMES = { "entities", "sweep", "forces", "physics", "contacts", "births", "food" };
+	private static final int PHASE_ENTITIES = 0;
+	private static final int PHASE_SWEEP = 1;
+	private static final int PHASE_FORCES = 2;
+	private static final int PHASE_PHYSICS = 3;
+	private static final int PHASE_CONTACTS = 4;
+	private static final int PHASE_BIRTHS = 5;
+	private static final int PHASE_FOOD = 6;
+	private MetricsRegistry metrics;
+	private MetricsRegistry.Histogram[] phaseTimes;
+	private MetricsRegistry.Histogram contactCount;
+	private MetricsRegistry.Counter tickCounter;
+	private MetricsRegistry.Counter birthCounter;
+	private MetricsRegistry.Counter deathCounter;
+
 	private World world;
+	
+	/**
+	 * Bodies of removed entities, reused for new ones.
+	 */
+	private BodyPool bodies;
 	private Body worldEdge;
-	private List<ISimEntity> simEntities = new CopyOnWriteArrayList<ISimEntity>();
+	private final EntityStore simEntities = new EntityStore();
 	private List<ISimEntity> babyEntities = new ArrayList<ISimEntity>();
-	private List<ISimEntity> deadEntities = new ArrayList<ISimEntity>();
+	private final FrameSnapshotBuffer snapshots = new FrameSnapshotBuffer();
+	private final ContactEventBuffer contacts = new ContactEventBuffer();
+	
+	/**
+	 * Offspring and immigrants with the same genes share their DNA.
+	 */
+	private final DNACache dnaCache = new DNACache();
+	
+	/**
+	 * Gravity and other external forces, applied to moving entities every step.
+	 */
+	private final ForceField forces = new ForceField();
 	
 	private long timeAccumulator;
 	
+	/**
+	 * Number of fixed steps taken since the world was created.
+	 */
+	private long tick;
+	
+	private static final int DEFAULT_MAX_STEPS_PER_UPDATE = 5;
+	
+	/**
+	 * Most fixed steps a single update() may take to catch up with elapsed time.
+	 */
+	private int maxStepsPerUpdate = DEFAULT_MAX_STEPS_PER_UPDATE;
+	
+	/**
+	 * Elapsed time discarded because it exceeded the catch-up budget.
+	 */
+	private long droppedMillis;
+	
+	private long births;
+	private long deaths;
+	
 	private static final long stepInMillis = 20;
 	private static final float stepInSeconds = stepInMillis / 1000.0f;
 	private static final int velocityIterations = 10;
@@ -69,10 +142,82 @@ public class PiccadillyLifeModelRoot {
     private static final float INITIAL_STATIC_ENTITY_ENERGY = 100F;
 
     private static final int DEFAULT_STATIC_BODIES = 20;
+
+    static final int DEFAULT_MOVING_BODIES = 20;
+	
+	/**
+	 * Most touch pointers tracked at once.  Pointer IDs from 0 to MAX_POINTERS - 1 are accepted.
+	 */
+	public static final int MAX_POINTERS = 10;
 	
-	private List<MouseJoint> userActions = new ArrayList<MouseJoint>();
+	/**
+	 * Joint dragging a body for each pointer, by pointer ID, or null.
+	 */
+	private final MouseJoint[] userActions = new MouseJoint[MAX_POINTERS];
+	
+	/**
+	 * Reused for forces and joint targets so input handling doesn't allocate.
+	 */
+	private final Vec2 scratch = new Vec2();
+	
+	/**
+	 * Linear scale of the world relative to the default, so larger populations keep the same density.
+	 */
+	private float scale = 1f;
+	private int staticBodies = DEFAULT_STATIC_BODIES;
+	
+	/**
+	 * Food fixtures are sensors: feeding is driven by overlap and the solver skips food contacts.
+	 */
+	private boolean foodSensors;
 	
 	public PiccadillyLifeModelRoot() {
+		this(DEFAULT_MOVING_BODIES);
+	}
+	
+	/**
+	 * @param movingBodies number of moving entities to seed the world with.  Worlds seeded
+	 * with more than the default population are enlarged, and given proportionally more food,
+	 * to keep the default density.
+	 */
+	public PiccadillyLifeModelRoot(int movingBodies) {
+		this(movingBodies, new Random().nextLong());
+	}
+	
+	/**
+	 * @param movingBodies number of moving entities to seed the world with.
+	 * @param seed seed for all randomness in this world.  Two worlds created with the same
+	 * population and seed, and given the same inputs at the same ticks, evolve identically.
+	 */
+	public PiccadillyLifeModelRoot(int movingBodies, long seed) {
+		this(movingBodies, seed, 0, 0, 0);
+		populate(movingBodies);
+	}
+	
+	/**
+	 * Create a world with no entities in it, to be filled from a {@link WorldCheckpoint}.
+	 * Randomness in the world is seeded from both seed and tick, so a world restored
+	 * from a checkpoint twice evolves the same way both times.
+	 * 
+	 * @param movingBodies number of moving entities the world was seeded with, which sets its size
+	 * @param seed seed the world was created with
+	 * @param tick tick the world has reached
+	 * @param births moving entities born so far
+	 * @param deaths moving entities died so far
+	 */
+	PiccadillyLifeModelRoot(int movingBodies, long seed, long tick, long births, long deaths) {
+		this.rnd = new Random(seed + tick);
+		this.seed = seed;
+		this.initialMovingBodies = movingBodies;
+		this.tick = tick;
+		this.births = births;
+		this.deaths = deaths;
+		
+		if (movingBodies > DEFAULT_MOVING_BODIES) {
+			scale = (float) Math.sqrt(movingBodies / (double) DEFAULT_MOVING_BODIES);
+			staticBodies = DEFAULT_STATIC_BODIES * movingBodies / DEFAULT_MOVING_BODIES;
+		}
+		
 		initializeWorld();
 	}
 	
@@ -81,64 +226,25 @@ public class PiccadillyLifeModelRoot {
 		Vec2 gravity = new Vec2(0.0f, 0.0f);
 		boolean doSleep = true;
 		world = new World(gravity, doSleep);
+		bodies = new BodyPool(world);
 		
 		//Create the borders of the world
 		BodyDef groundBodyDef = new BodyDef();
 		worldEdge = world.createBody(groundBodyDef);
 		PolygonShape edgeShape = new PolygonShape();
-		edgeShape.setAsEdge(new Vec2(-WORLD_SIZE_X, -WORLD_SIZE_Y), new Vec2(WORLD_SIZE_X, -WORLD_SIZE_Y));
+		float sx = WORLD_SIZE_X * scale;
+		float sy = WORLD_SIZE_Y * scale;
+		edgeShape.setAsEdge(new Vec2(-sx, -sy), new Vec2(sx, -sy));
 		worldEdge.createFixture(edgeShape, 1.0f);
-		edgeShape.setAsEdge(new Vec2(-WORLD_SIZE_X, -WORLD_SIZE_Y), new Vec2(-WORLD_SIZE_X, WORLD_SIZE_Y));
+		edgeShape.setAsEdge(new Vec2(-sx, -sy), new Vec2(-sx, sy));
 		worldEdge.createFixture(edgeShape, 1.0f);
-		edgeShape.setAsEdge(new Vec2(WORLD_SIZE_X, -WORLD_SIZE_Y), new Vec2(WORLD_SIZE_X, WORLD_SIZE_Y));
+		edgeShape.setAsEdge(new Vec2(sx, -sy), new Vec2(sx, sy));
 		worldEdge.createFixture(edgeShape, 1.0f);
-		edgeShape.setAsEdge(new Vec2(-WORLD_SIZE_X, WORLD_SIZE_Y), new Vec2(WORLD_SIZE_X, WORLD_SIZE_Y));
+		edgeShape.setAsEdge(new Vec2(-sx, sy), new Vec2(sx, sy));
 		worldEdge.createFixture(edgeShape, 1.0f);
 		
-		Point center = new Point(0, 0);
-		PointF size = new PointF(4f, 4f);
-		
-		//Create dynamic entities
-		simEntities.addAll(generateRandomCircleBodies(20, .3f, false, center, size));
-		
-		//Create the static entities (food)
-		size = new PointF(4f, 6f);
-		center = new Point(6, 0);
-		simEntities.addAll(generateRandomCircleBodies(DEFAULT_STATIC_BODIES / 2, .3f, true, center, size));
-		center = new Point(-6, 0);
-		simEntities.addAll(generateRandomCircleBodies(DEFAULT_STATIC_BODIES / 2, .3f, true, center, size));
-		
 		//Handle collisions between bodies
-		world.setContactListener(new ContactListener() {
-            
-            @Override
-            public void preSolve(Contact contact, Manifold arg1) {
-            }
-            
-            @Override
-            public void postSolve(Contact contact, ContactImpulse arg1) {
-            }
-            
-            @Override
-            public void endContact(Contact contact) {
-            }
-            
-            @Override
-            public void beginContact(Contact contact) {
-                ISimEntity se1 = (ISimEntity) contact.getFixtureA().getBody().getUserData();
-                ISimEntity se2 = (ISimEntity) contact.getFixtureB().getBody().getUserData();
-                
-                if (se1 == null || se2 == null)
-                    return;
-                
-                if (se1.isStatic() && se2.isStatic())
-                    return;
-
-                se1.collision(se2);
-                se2.collision(se1);
-                
-            }
-        });	
+		world.setContactListener(new SimEntityContactListener(contacts));
 		
 		world.setContactFilter(new ContactFilter() {
 		    /* (non-Javadoc)
@@ -151,85 +257,465 @@ public class PiccadillyLifeModelRoot {
 		});
 	}
 	
-	private List<ISimEntity> generateRandomCircleBodies(int bodyCount, float maxRadius, boolean isFood, Point center, PointF size) {
-	    List<ISimEntity> bl = new ArrayList<ISimEntity>();
-	    
+	private void populate(int movingBodies) {
+		//Create dynamic entities
+		generateRandomCircleBodies(movingBodies, .3f, false, 0, 0, 4f * scale, 4f * scale);
+		
+		//Create the static entities (food)
+		generateRandomCircleBodies(staticBodies / 2, .3f, true, 6 * scale, 0, 4f * scale, 6f * scale);
+		generateRandomCircleBodies(staticBodies / 2, .3f, true, -6 * scale, 0, 4f * scale, 6f * scale);
+	}
+	
+	/**
+	 * Add a moving entity, for restoring from a checkpoint.
+	 */
+	MovingEntity addMovingEntity(float x, float y, MovingEntityDNA dna, float energy) {
+		return new MovingEntity(simEntities, babyEntities, bodies, x, y, dna, energy);
+	}
+	
+	/**
+	 * @param genome
+	 * @return DNA decoded from genome, shared with other entities with the same genes.
+	 */
+	MovingEntityDNA internDNA(Genome genome) {
+		return dnaCache.get(genome);
+	}
+	
+	/**
+	 * Add food, for restoring from a checkpoint.
+	 */
+	FixedEntity addFixedEntity(float x, float y, StaticEntityDNA dna, float energy) {
+		return new FixedEntity(simEntities, babyEntities, bodies, x, y, dna, energy, foodSensors);
+	}
+	
+	private void generateRandomCircleBodies(int bodyCount, float maxRadius, boolean isFood, float centerX, float centerY, float sizeX, float sizeY) {
 	    for (int i = 0; i < bodyCount; ++i) {
-	        float x = center.x + (size.x * (RND.nextFloat() - .5f));
-	        float y = center.y + (size.y * (RND.nextFloat() - .5f));
-	        float s = RND.nextFloat() * maxRadius;
-	        int cl = Color.rgb(RND.nextInt(256), RND.nextInt(256), RND.nextInt(256));
+	        float x = centerX + (sizeX * (rnd.nextFloat() - .5f));
+	        float y = centerY + (sizeY * (rnd.nextFloat() - .5f));
+	        float s = rnd.nextFloat() * maxRadius;
+	        int cl = Colors.rgb(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
 	        
 	        if (isFood)
-	            bl.add(new FixedEntity(babyEntities, world, x, y, new StaticEntityDNA(s), INITIAL_STATIC_ENTITY_ENERGY));
+	            new FixedEntity(simEntities, babyEntities, bodies, x, y, new StaticEntityDNA(s), INITIAL_STATIC_ENTITY_ENERGY, foodSensors);
 	        else
-	            bl.add(new MovingEntity(babyEntities, world, x, y, new MovingEntityDNA(MovingEntityDNA.generateRandomGenes(20), cl, RND.nextInt(20) + 20, s, RND.nextInt(241) + 15, RND.nextInt(256)), INITIAL_MOVING_ENTITY_ENERGY));
+	            new MovingEntity(simEntities, babyEntities, bodies, x, y, new MovingEntityDNA(MovingEntityDNA.generateRandomGenes(20, rnd), cl, rnd.nextInt(20) + 20, s, rnd.nextInt(241) + 15, rnd.nextInt(256)), INITIAL_MOVING_ENTITY_ENERGY);
 	    }
-	    
-	    return bl;
 	}
 	
+	/**
+	 * Advance the simulation by the elapsed time, in whole fixed steps.  At most
+	 * maxStepsPerUpdate steps are taken; any further whole steps of backlog are
+	 * dropped rather than simulated, so one slow frame can't make the next one
+	 * slower still.
+	 * 
+	 * @param dt elapsed time in milliseconds
+	 */
 	public void update(long dt) {
 		timeAccumulator += dt;
 		
-		for (ISimEntity lu : simEntities) {
-		    if (lu.isAlive()) {
-		        lu.timeStep();
-		    } else {
-		        world.destroyBody(lu.getBody());
-		        deadEntities.add(lu);
+		int steps = 0;
+		while (timeAccumulator >= stepInMillis) {
+		    if (steps == maxStepsPerUpdate) {
+		        long dropped = timeAccumulator - (timeAccumulator % stepInMillis);
+		        droppedMillis += dropped;
+		        timeAccumulator -= dropped;
+		        break;
 		    }
-        }
+		    
+		    step();
+		    timeAccumulator -= stepInMillis;
+		    steps++;
+		}
+	}
+	
+	/**
+	 * Advance the simulation by exactly one fixed step.  Entity logic and physics
+	 * move in lockstep, so behaviour doesn't depend on how often update() is called.
+	 */
+	public void step() {
+		final boolean timed = phaseTimes != null;
+		long t = timed ? System.nanoTime() : 0;
+		long deathsBefore = deaths;
+		long birthsBefore = births;
 		
-		for (ISimEntity e : deadEntities) 
-		    simEntities.remove(e);
+		//Advance all entity state in one pass, then apply movement and remove the dead.
+		simEntities.timeStep();
 		
-		deadEntities.clear();
+		for (int k = 0; k < simEntities.getDueMoveCount(); ++k)
+		    ((MovingEntity) simEntities.get(simEntities.getDueMove(k))).move();
 		
-		while (timeAccumulator >= stepInMillis) {
-			world.step(stepInSeconds, velocityIterations, positionIterations);
-			timeAccumulator -= stepInMillis;
+		if (timed)
+		    t = endPhase(PHASE_ENTITIES, t);
+		
+		for (int k = 0; k < simEntities.getDeadCount(); ++k) {
+		    int handle = simEntities.getDead(k);
+		    ISimEntity lu = simEntities.get(handle);
+		    if (!lu.isStatic()) {
+		        deaths++;
+		        if (lineage != null)
+		            lineage.death(tick, simEntities.getId(handle), simEntities.getEnergy(handle));
+		    }
+		    releaseBody(lu.getBody());
+		    simEntities.remove(handle);
 		}
 		
-		for (ISimEntity e : babyEntities) {
+		if (timed)
+		    t = endPhase(PHASE_SWEEP, t);
+		
+		forces.apply(simEntities);
+		
+		if (timed)
+		    t = endPhase(PHASE_FORCES, t);
+		
+		world.step(stepInSeconds, velocityIterations, positionIterations);
+		
+		if (timed) {
+		    t = endPhase(PHASE_PHYSICS, t);
+		    contactCount.record(contacts.size());
+		}
+		
+		//Contacts were only recorded during the step; apply them now, in a fixed order.
+		contacts.resolve(simEntities);
+		
+		if (timed)
+		    t = endPhase(PHASE_CONTACTS, t);
+		
+		for (int i = 0; i < babyEntities.size(); ++i) {
+		    ISimEntity e = babyEntities.get(i);
 		    if (e instanceof MovingEntity) {
 		        MovingEntityDNA dna = (MovingEntityDNA) e.getDNA();
-		        MovingEntityDNA newDNA = dna.copy();
+		        MovingEntityDNA newDNA = dnaCache.get(dna.copyGenes(((MovingEntity) e).getLastEncounter(), rnd));
 	        
-		        simEntities.add(new MovingEntity(babyEntities, world, e.getBody().getPosition().x, e.getBody().getPosition().y, newDNA, e.getEnergy() / 2));
+		        MovingEntity child = new MovingEntity(simEntities, babyEntities, bodies, e.getBody().getPosition().x, e.getBody().getPosition().y, newDNA, e.getEnergy() / 2);
+		        births++;
+		        if (lineage != null)
+		            lineage.birth(tick, simEntities.getId(e.getHandle()), simEntities.getId(child.getHandle()), dna.getCopyType(), newDNA.getGenome());
 		    }
 		}
 		babyEntities.clear();
 		
-		if (getStaticEntitiesCount(simEntities) < DEFAULT_STATIC_BODIES / 2) {
-		    PointF size = new PointF(4f, 6f);
-	        Point center = new Point(RND.nextInt(12) - 6, 0);
-	        simEntities.addAll(generateRandomCircleBodies(DEFAULT_STATIC_BODIES / 2, .3f, true, center, size));
+		if (timed)
+		    t = endPhase(PHASE_BIRTHS, t);
+		
+		if (simEntities.getCensus().getFoodCount() < staticBodies / 2) {
+	        generateRandomCircleBodies(staticBodies / 2, .3f, true, (rnd.nextInt(12) - 6) * scale, 0, 4f * scale, 6f * scale);
+		}
+		
+		if (timed) {
+		    endPhase(PHASE_FOOD, t);
+		    tickCounter.increment();
+		    birthCounter.add(births - birthsBefore);
+		    deathCounter.add(deaths - deathsBefore);
 		}
+		
+		tick++;
+	}
+	
+	/**
+	 * Record the time since a phase started.
+	 * 
+	 * @return now, the start of the next phase
+	 */
+	private long endPhase(int phase, long start) {
+	    long now = System.nanoTime();
+	    phaseTimes[phase].record(now - start);
+	    return now;
+	}
+	
+	/**
+	 * Measure every step from now on: the time taken by each of its phases in
+	 * nanoseconds, as histograms named step.[phase].ns, contacts per step as
+	 * step.contacts, and counters of ticks, births and deaths.  Call between steps.
+	 * 
+	 * @param metrics registry to record to, or null to stop measuring
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+	    this.metrics = metrics;
+	    
+	    if (metrics == null) {
+	        phaseTimes = null;
+	        return;
+	    }
+	    
+	    MetricsRegistry.Histogram[] h = new MetricsRegistry.Histogram[PHASE_NAMES.length];
+	    for (int i = 0; i < h.length; ++i)
+	        h[i] = metrics.histogram("step." + PHASE_NAMES[i] + ".ns");
+	    
+	    contactCount = metrics.histogram("step.contacts");
+	    tickCounter = metrics.counter("ticks");
+	    birthCounter = metrics.counter("births");
+	    deathCounter = metrics.counter("deaths");
+	    phaseTimes = h;
+	}
+	
+	/**
+	 * @return registry steps are measured in, or null if not measuring.
+	 */
+	public MetricsRegistry getMetrics() {
+	    return metrics;
 	}
 
 	/**
-     * @param simEntities2
-     * @return
+	 * Return the body of a removed entity to the pool.  Releasing destroys the body's
+	 * joints, so forget any pointer dragging it.
+	 */
+	private void releaseBody(Body body) {
+	    for (int i = 0; i < userActions.length; ++i) {
+	        if (userActions[i] != null && userActions[i].getBodyB() == body)
+	            userActions[i] = null;
+	    }
+	    
+	    bodies.release(body);
+	}
+	
+	/**
+	 * Remove a share of the living moving entities, chosen at random, and hand their genomes
+	 * over for migration to another world.  Call between steps.
+	 * 
+	 * @param share fraction of the moving population to remove, 0 - 1
+	 * @param emigrants receives the genomes of the removed entities
+	 * @return number of entities removed
+	 */
+	public int emigrate(float share, List<Genome> emigrants) {
+	    //Entities that ran out of energy in the last step are only swept in the next; skip them.
+	    int alive = 0;
+	    for (int i = 0; i < simEntities.size(); ++i) {
+	        ISimEntity e = simEntities.getAt(i);
+	        if (!e.isStatic() && e.getEnergy() > 0f)
+	            alive++;
+	    }
+	    
+	    int count = Math.round(alive * share);
+	    
+	    for (int k = 0; k < count; ++k) {
+	        ISimEntity e;
+	        do {
+	            e = simEntities.getAt(rnd.nextInt(simEntities.size()));
+	        } while (e.isStatic() || e.getEnergy() <= 0f);
+	        
+	        emigrants.add(((MovingEntityDNA) e.getDNA()).getGenome());
+	        if (lineage != null)
+	            lineage.emigration(tick, simEntities.getId(e.getHandle()), e.getEnergy());
+	        releaseBody(e.getBody());
+	        simEntities.remove(e.getHandle());
+	    }
+	    
+	    return count;
+	}
+	
+	/**
+	 * Add moving entities grown from genomes that migrated from another world.  They are
+	 * placed at random in the area the initial population was seeded in.  Call between steps.
+	 * 
+	 * @param immigrants
+	 */
+	public void immigrate(List<Genome> immigrants) {
+	    float size = 4f * scale;
+	    
+	    for (int i = 0; i < immigrants.size(); ++i) {
+	        float x = size * (rnd.nextFloat() - .5f);
+	        float y = size * (rnd.nextFloat() - .5f);
+	        
+	        MovingEntity e = new MovingEntity(simEntities, babyEntities, bodies, x, y, dnaCache.get(immigrants.get(i)), INITIAL_MOVING_ENTITY_ENERGY);
+	        if (lineage != null)
+	            logFounder(e);
+	    }
+	}
+
+    /**
+     * @return number of moving entities born since the world was created.
      */
-    private int getStaticEntitiesCount(List<ISimEntity> simEntities2) {
-        int c = 0;
-        for (ISimEntity e : simEntities2)
-            if (e.isStatic())
-                c++;
+    public long getBirthCount() {
+        return births;
+    }
+
+    /**
+     * @return number of moving entities that have died since the world was created.
+     */
+    public long getDeathCount() {
+        return deaths;
+    }
+
+    /**
+     * @return number of fixed steps taken since the world was created.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return total elapsed time, in milliseconds, that was dropped because update()
+     * had reached its catch-up budget.
+     */
+    public long getDroppedMillis() {
+        return droppedMillis;
+    }
+
+    /**
+     * @return most fixed steps a single update() will take.
+     */
+    public int getMaxStepsPerUpdate() {
+        return maxStepsPerUpdate;
+    }
+
+    /**
+     * @param maxStepsPerUpdate most fixed steps a single update() will take, at least 1.
+     */
+    public void setMaxStepsPerUpdate(int maxStepsPerUpdate) {
+        if (maxStepsPerUpdate < 1)
+            throw new IllegalArgumentException("maxStepsPerUpdate must be at least 1");
+
+        this.maxStepsPerUpdate = maxStepsPerUpdate;
+    }
+
+    /**
+     * @return true if food fixtures are sensors.
+     */
+    public boolean isFoodSensors() {
+        return foodSensors;
+    }
+
+    /**
+     * Choose how moving entities touch food.  Solid food is bounced off and every
+     * feeding contact is solved as a collision.  Sensor food is passed through,
+     * and an entity feeds once each time it starts to overlap the food, which
+     * saves the contact solver that work.  Applies to existing food as well.
+     * 
+     * @param foodSensors true to make food fixtures sensors
+     */
+    public void setFoodSensors(boolean foodSensors) {
+        if (journal != null)
+            journal.record(tick, InputJournal.FOOD_SENSORS, foodSensors ? 1 : 0, 0f, 0f);
         
-        return c;
+        this.foodSensors = foodSensors;
+        
+        for (int i = 0; i < simEntities.size(); ++i) {
+            ISimEntity e = simEntities.getAt(i);
+            if (e.isStatic())
+                e.getBody().getFixtureList().setSensor(foodSensors);
+        }
     }
 
+    /**
+     * @return length of one physics step, in milliseconds.
+     */
+    public static long getStepInMillis() {
+        return stepInMillis;
+    }
+
+    /**
+     * Copy the current state of all entities into a snapshot for the renderer.
+     * Call from the simulation thread at the end of a tick.
+     */
+    public void publishSnapshot() {
+        simEntities.writeSnapshot(snapshots.getBack());
+        snapshots.publish();
+    }
+
+    /**
+     * @return completed frames for the renderer.
+     */
+    public FrameSnapshotBuffer getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return first body in the world.  Includes inactive bodies kept for reuse.
+     */
     public Body getBodyList() {
 		return world.getBodyList();
 	}
 	
-	public List<ISimEntity> getEntites() {
+	/**
+	 * @return store of all entities.  Only the simulation thread may use it; other threads
+	 * read the latest frame snapshot instead.
+	 */
+	public EntityStore getEntites() {
 	    return simEntities;
 	}
+	
+	/**
+	 * @return population counts, energy totals and histograms, maintained as the world changes.
+	 */
+	public PopulationCensus getCensus() {
+	    return simEntities.getCensus();
+	}
+
+	/**
+	 * @return seed the world was created with.
+	 */
+	public long getSeed() {
+	    return seed;
+	}
+	
+	/**
+	 * @return number of moving entities the world was seeded with.
+	 */
+	public int getInitialMovingBodies() {
+	    return initialMovingBodies;
+	}
+	
+	/**
+	 * Record every input from now on, so the run can be replayed.  Must be called
+	 * before the first step.
+	 * 
+	 * @return the journal inputs are recorded in
+	 */
+	public InputJournal startJournal() {
+	    if (tick != 0)
+	        throw new IllegalStateException("A journal must be started before the first step");
+	    
+	    journal = new InputJournal(seed, initialMovingBodies);
+	    
+	    return journal;
+	}
+	
+	/**
+	 * Log every birth and death from now on.  The moving entities already in the
+	 * world are logged as born without a parent.  Call between steps.  The log is
+	 * not closed by the world.
+	 * 
+	 * @param lineage log, or null to stop logging
+	 */
+	public void setLineageLog(LineageLog lineage) {
+	    this.lineage = lineage;
+	    
+	    if (lineage == null)
+	        return;
+	    
+	    for (int i = 0; i < simEntities.size(); ++i) {
+	        ISimEntity e = simEntities.getAt(i);
+	        if (!e.isStatic())
+	            logFounder(e);
+	    }
+	}
+	
+	/**
+	 * @return log births and deaths are written to, or null if not logging.
+	 */
+	public LineageLog getLineageLog() {
+	    return lineage;
+	}
+	
+	private void logFounder(ISimEntity e) {
+	    MovingEntityDNA dna = (MovingEntityDNA) e.getDNA();
+	    lineage.birth(tick, LineageLog.NO_PARENT, simEntities.getId(e.getHandle()), null, dna.getGenome());
+	}
+	
+	/**
+	 * @return journal inputs are recorded in, or null if not recording.
+	 */
+	public InputJournal getJournal() {
+	    return journal;
+	}
 
 	public void userActionStart(int pointerId, final float x, final float y) {
+		if (journal != null)
+			journal.record(tick, InputJournal.USER_ACTION_START, pointerId, x, y);
+		
+		if (pointerId < 0 || pointerId >= MAX_POINTERS || userActions[pointerId] != null)
+			return;
+		
 		final List<Fixture> fixtures = new ArrayList<Fixture>();
 		final Vec2 vec = new Vec2(x, y);
 		world.queryAABB(new QueryCallback() {
@@ -252,38 +738,97 @@ public class PiccadillyLifeModelRoot {
 			
 			MouseJoint joint = (MouseJoint) world.createJoint(def);
 			
-			if (joint != null) {
-        		joint.m_userData = pointerId;
-        		userActions.add(joint);
-			}
+			userActions[pointerId] = joint;
 		} 
 	}
 
 	public void userActionUpdate(int pointerId, float x, float y) {
-		for (MouseJoint joint : userActions) {
-			if (pointerId == (Integer) joint.m_userData) {
-				joint.setTarget(new Vec2(x, y));
-				break;
-			}
-		}
+		if (journal != null)
+			journal.record(tick, InputJournal.USER_ACTION_UPDATE, pointerId, x, y);
+		
+		if (pointerId >= 0 && pointerId < MAX_POINTERS && userActions[pointerId] != null)
+			userActions[pointerId].setTarget(scratch.set(x, y));
 	}
 
 	public void userActionEnd(int pointerId, float x, float y) {
-		for (MouseJoint joint : userActions) {
-			if (pointerId == (Integer) joint.m_userData) {
-				world.destroyJoint(joint);
-				userActions.remove(joint);
-				break;
-			}
+		if (journal != null)
+			journal.record(tick, InputJournal.USER_ACTION_END, pointerId, x, y);
+		
+		if (pointerId >= 0 && pointerId < MAX_POINTERS && userActions[pointerId] != null) {
+			world.destroyJoint(userActions[pointerId]);
+			userActions[pointerId] = null;
 		}
 	}
 	
+	/**
+	 * Set gravity: the acceleration of every moving entity, from the next step on
+	 * until changed.
+	 * 
+	 * @param x
+	 * @param y
+	 */
 	public void worldForce(float x, float y) {
-	    for (ISimEntity lu : simEntities) {
-	        if (!lu.isStatic()) {
-    	        Body b = lu.getBody();
-    	        b.applyForce(new Vec2(x  * b.getMass(), y * b.getMass()), b.getPosition());
-	        }
-	    }
+	    if (journal != null)
+	        journal.record(tick, InputJournal.WORLD_FORCE, 0, x, y);
+	    
+	    forces.setGravity(x, y);
+	}
+	
+	/**
+	 * Add a point that pulls moving entities toward it, from the next step on.
+	 * See {@link ForceField#addAttractor(float, float, float, float)}.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param strength
+	 * @param radius
+	 */
+	public void addAttractor(float x, float y, float strength, float radius) {
+	    forces.addAttractor(x, y, strength, radius);
+	    
+	    if (journal != null)
+	        journal.record(tick, InputJournal.ADD_ATTRACTOR, 0, x, y, strength, radius);
+	}
+	
+	/**
+	 * Add a point that pushes moving entities away from it, from the next step on.
+	 * See {@link ForceField#addRepulsor(float, float, float, float)}.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param strength
+	 * @param radius
+	 */
+	public void addRepulsor(float x, float y, float strength, float radius) {
+	    forces.addRepulsor(x, y, strength, radius);
+	    
+	    if (journal != null)
+	        journal.record(tick, InputJournal.ADD_REPULSOR, 0, x, y, strength, radius);
+	}
+	
+	/**
+	 * Add a zone that slows moving entities inside it, from the next step on.
+	 * See {@link ForceField#addDampingZone(float, float, float, float)}.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @param damping
+	 */
+	public void addDampingZone(float x, float y, float radius, float damping) {
+	    forces.addDampingZone(x, y, radius, damping);
+	    
+	    if (journal != null)
+	        journal.record(tick, InputJournal.ADD_DAMPING_ZONE, 0, x, y, radius, damping);
+	}
+	
+	/**
+	 * Remove all attractors, repulsors and damping zones.  Gravity is left as it is.
+	 */
+	public void clearForceFields() {
+	    if (journal != null)
+	        journal.record(tick, InputJournal.CLEAR_FORCE_FIELDS, 0, 0f, 0f);
+	    
+	    forces.clear();
 	}
 }
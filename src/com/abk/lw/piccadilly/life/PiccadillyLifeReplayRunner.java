@@ -0,0 +1,86 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.abk.lw.piccadilly.life.model.FrameSnapshot;
+
+/**
+ * Replays a recorded run on a plain JVM and prints how long it took and a
+ * checksum of the final state.  Two builds that replay the same journal to the
+ * same checksum simulated the same run.
+ *
+ * Usage: PiccadillyLifeReplayRunner journal [ticks]
+ *
+ * @author kgilmer
+ *
+ */
+public class PiccadillyLifeReplayRunner {
+
+    /**
+     * @param model
+     * @return hash of the position, rotation, radius and energy of every entity.
+     */
+    public static long checksum(PiccadillyLifeModelRoot model) {
+        model.publishSnapshot();
+        FrameSnapshot f = model.getSnapshots().acquire();
+        long h = 17;
+
+        for (int i = 0; i < f.count; ++i) {
+            h = 31 * h + Float.floatToIntBits(f.x[i]);
+            h = 31 * h + Float.floatToIntBits(f.y[i]);
+            h = 31 * h + Float.floatToIntBits(f.angle[i]);
+            h = 31 * h + Float.floatToIntBits(f.radius[i]);
+            h = 31 * h + Float.floatToIntBits(f.energy[i]);
+        }
+
+        return h;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PiccadillyLifeReplayRunner journal [ticks]");
+            System.exit(1);
+        }
+
+        InputJournal journal;
+        InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            journal = InputJournal.read(in);
+        } finally {
+            in.close();
+        }
+
+        long ticks = args.length > 1 ? Long.parseLong(args[1]) : journal.getEndTick();
+        PiccadillyLifeModelRoot model = journal.createModel();
+
+        long start = System.nanoTime();
+        journal.replay(model, ticks);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("seed " + journal.getSeed()
+                + " inputs " + journal.size()
+                + " ticks " + ticks
+                + " ticks/sec " + (long) (ticks / (elapsed / 1e9))
+                + " births " + model.getBirthCount()
+                + " deaths " + model.getDeathCount()
+                + " checksum " + Long.toHexString(checksum(model)));
+    }
+}
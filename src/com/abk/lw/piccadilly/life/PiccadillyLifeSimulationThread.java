@@ -0,0 +1,208 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+/**
+ * Long-lived thread that advances the model at a fixed rate.
+ * 
+ * This is the only thread that touches the model's World.  Input from other
+ * threads (touch, sensors) is handed over through {@link #getInputQueue()} and
+ * applied at the start of the next tick.
+ * 
+ * @author kgilmer
+ *
+ */
+public class PiccadillyLifeSimulationThread extends Thread {
+
+    /**
+     * Notified on the simulation thread after each tick, once the tick's
+     * frame snapshot has been published.
+     */
+    public interface FrameListener {
+        void onFrame();
+    }
+
+    private final PiccadillyLifeModelRoot model;
+    private final FrameListener listener;
+    private final InputQueue inputQueue = new InputQueue();
+    private final long tickNanos = PiccadillyLifeModelRoot.getStepInMillis() * 1000000L;
+
+    /**
+     * Share of each frame interval spent stepping the model in turbo mode.  The
+     * rest is left for input, publishing the frame and the UI thread.
+     */
+    private static final float TURBO_BUDGET = .8f;
+
+    private boolean paused = true;
+    private boolean running = true;
+    /**
+     * True while the thread is waiting in a pause, and not touching the model.
+     */
+    private boolean idle;
+
+    private volatile boolean turbo;
+
+    /**
+     * Simulated time over wall time, measured over the last frame.
+     */
+    private volatile float speedUp = 1f;
+
+    public PiccadillyLifeSimulationThread(PiccadillyLifeModelRoot model, FrameListener listener) {
+        super(PiccadillyLifeSimulationThread.class.getSimpleName());
+        this.model = model;
+        this.listener = listener;
+    }
+
+    /**
+     * @return queue for touch and gravity input, applied to the model before each tick.
+     */
+    public InputQueue getInputQueue() {
+        return inputQueue;
+    }
+
+    /**
+     * Stop advancing the model until {@link #resumeSimulation()} is called.  Returns
+     * once the thread has finished its current tick, after which the model may be
+     * read from the calling thread until the simulation is resumed.
+     */
+    public synchronized void pauseSimulation() {
+        paused = true;
+
+        try {
+            while (!idle && isAlive())
+                wait(tickNanos / 1000000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Continue advancing the model.  Time spent paused is not simulated.
+     */
+    public synchronized void resumeSimulation() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * In turbo mode the model is stepped as many times as the CPU budget allows
+     * between frames, rather than in real time.
+     * 
+     * @param turbo
+     */
+    public void setTurbo(boolean turbo) {
+        this.turbo = turbo;
+    }
+
+    /**
+     * @return true if in turbo mode.
+     */
+    public boolean isTurbo() {
+        return turbo;
+    }
+
+    /**
+     * @return simulated time divided by wall time over the last frame.  About 1 when
+     * running in real time.
+     */
+    public float getSpeedUp() {
+        return speedUp;
+    }
+
+    /**
+     * Stop the thread and wait for it to exit.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+
+        interrupt();
+
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long last = 0;
+
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (paused) {
+                        idle = true;
+                        notifyAll();
+                        while (paused && running)
+                            wait();
+                        idle = false;
+
+                        //Start timing afresh after a pause.
+                        last = 0;
+                    }
+
+                    if (!running)
+                        return;
+                }
+
+                long now = System.nanoTime();
+                if (last == 0)
+                    last = now - tickNanos;
+
+                long firstTick = model.getTick();
+
+                inputQueue.applyTo(model);
+                if (turbo) {
+                    fastForward(now + (long) (tickNanos * TURBO_BUDGET));
+                    //Real time starts afresh when turbo mode is switched off.
+                    last = 0;
+                } else {
+                    model.update((now - last) / 1000000L);
+                    //Keep the sub-millisecond remainder for the next tick.
+                    last = now - ((now - last) % 1000000L);
+                }
+                model.publishSnapshot();
+
+                if (listener != null)
+                    listener.onFrame();
+
+                long elapsed = System.nanoTime() - now;
+                speedUp = (model.getTick() - firstTick) * tickNanos / (float) Math.max(elapsed, tickNanos);
+
+                long sleep = tickNanos - elapsed;
+                if (sleep > 0)
+                    Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+            }
+        } catch (InterruptedException e) {
+            //Shutting down.
+        }
+    }
+
+    /**
+     * Step the model until the deadline has passed.  At least one step is taken.
+     * 
+     * @param deadline System.nanoTime() to stop at
+     */
+    private void fastForward(long deadline) {
+        do {
+            model.step();
+        } while (System.nanoTime() < deadline);
+    }
+}
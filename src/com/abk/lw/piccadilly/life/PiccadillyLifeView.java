@@ -15,34 +15,65 @@
  */
 package com.abk.lw.piccadilly.life;
 
-import org.jbox2d.collision.shapes.CircleShape;
-import org.jbox2d.collision.shapes.Shape;
-import org.jbox2d.collision.shapes.ShapeType;
+import java.util.Arrays;
 import org.jbox2d.common.MathUtils;
-import org.jbox2d.common.Vec2;
-import org.jbox2d.dynamics.Body;
-import org.jbox2d.dynamics.Fixture;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.view.View;
-import com.abk.lw.piccadilly.life.model.ISimEntity;
-import com.abk.lw.piccadilly.life.model.MovingEntity;
-import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+import com.abk.lw.piccadilly.life.model.FrameSnapshot;
 
 public class PiccadillyLifeView extends View {
-    private static final Paint FOOD_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private static final Paint LIVE_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private static final int FOOD_COLOR = 0x66FFFF;
+    private static final int DEAD_COLOR = 0xFF444444;
+    private static final Paint BODY_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
     private static final Paint LINE_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private static final Paint DEAD_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
     static {
-        FOOD_PAINT.setColor(0xFF66FFFF);
-        LIVE_PAINT.setColor(0xFFFF6666);
-        DEAD_PAINT.setColor(0xFF444444);
         LINE_PAINT.setColor(0xFFFFFFFF);
     }
 
+    /**
+     * Alpha is rounded down to a multiple of this, at least one step, so bodies of
+     * similar energy share a paint.
+     */
+    private static final int ALPHA_STEP = 16;
+    /**
+     * Heading lines are drawn on moving bodies at least this big on screen, in pixels...
+     */
+    private static final float LINE_MIN_RADIUS = 4f;
+    /**
+     * ...when no more than this many moving bodies are visible.
+     */
+    private static final int LINE_MAX_BODIES = 500;
+    /**
+     * Energy labels are drawn on moving bodies at least this big on screen, in pixels...
+     */
+    private static final float LABEL_MIN_RADIUS = 16f;
+    /**
+     * ...when no more than this many moving bodies are visible.
+     */
+    private static final int LABEL_MAX_BODIES = 50;
+
     private PiccadillyLifeModelRoot model;
+    private PiccadillyLifeSimulationThread simulation;
+    private MetricsRegistry.Histogram drawTime;
+
+    /**
+     * Labels are formatted right-aligned into this buffer so drawing them doesn't allocate.
+     */
+    private final char[] labelChars = new char[16];
+
+    /**
+     * Visible bodies of the frame being drawn, each as its colour in the high
+     * int and its index in the low int, sorted so bodies of one colour are drawn together.
+     */
+    private long[] drawOrder = new long[0];
+    private int drawCount;
+    private int movingCount;
+    /**
+     * Heading lines of the frame being drawn, drawn in one call.
+     */
+    private float[] linePoints = new float[0];
 
     public static final float VIEWPORT_SIZE = 16.0f; // meters
 
@@ -54,75 +85,192 @@ public class PiccadillyLifeView extends View {
         this.model = model;
     }
 
+    /**
+     * @param simulation thread advancing the model, used to show turbo mode and its speed-up.
+     */
+    public void setSimulation(PiccadillyLifeSimulationThread simulation) {
+        this.simulation = simulation;
+    }
+
+    /**
+     * @param metrics registry to record the time of each frame drawn to, as view.draw.ns, or null
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        drawTime = metrics == null ? null : metrics.histogram("view.draw.ns");
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
+        long drawStart = System.nanoTime();
         super.onDraw(canvas);
         canvas.drawARGB(255, 0, 0, 0);
         canvas.translate(getWidth() / 2, getHeight() / 2);
-        drawBodies(canvas);
-        canvas.drawText("" + model.getEntites().size(), 40, 40, LINE_PAINT);
+        //Draw only from the last completed frame, never from the live world.
+        FrameSnapshot frame = model.getSnapshots().acquire();
+        //In turbo mode only the population and speed-up are drawn.
+        if (simulation != null && simulation.isTurbo()) {
+            int start = formatLabel(simulation.getSpeedUp(), 1);
+            canvas.drawText(labelChars, start, labelChars.length - start, 40, 80, LINE_PAINT);
+        } else {
+            drawBodies(canvas, frame);
+        }
+        int start = formatLabel(frame.count, 0);
+        canvas.drawText(labelChars, start, labelChars.length - start, 40, 40, LINE_PAINT);
+
+        if (drawTime != null)
+            drawTime.record(System.nanoTime() - drawStart);
     }
 
-    private void drawBodies(Canvas canvas) {
-        for (ISimEntity e : model.getEntites()) {
-            Body b = e.getBody();
-            Fixture f = b.getFixtureList();
+    private void drawBodies(Canvas canvas, FrameSnapshot frame) {
+        float scale = getWidth() / VIEWPORT_SIZE;
+
+        cull(frame, getWidth() / 2 / scale, getHeight() / 2 / scale);
+
+        //Bodies of one colour are drawn together so the paint changes once per colour, not per body.
+        int color = 0;
+        for (int k = 0; k < drawCount; ++k) {
+            long key = drawOrder[k];
+            int i = (int) key;
 
-            while (f != null) {
-                Shape s = f.getShape();
-                drawShape(canvas, b.getPosition(), b.getAngle(), s, getPaintForBody(e), e);
-                f = f.getNext();
+            if (k == 0 || (int) (key >>> 32) != color) {
+                color = (int) (key >>> 32);
+                BODY_PAINT.setColor(color);
             }
+
+            canvas.drawCircle(frame.x[i] * scale, frame.y[i] * scale, frame.radius[i] * scale, BODY_PAINT);
         }
+
+        if (movingCount <= LINE_MAX_BODIES)
+            drawLines(canvas, frame, scale);
+
+        if (movingCount <= LABEL_MAX_BODIES)
+            drawLabels(canvas, frame, scale);
     }
 
     /**
-     * @param e
-     * @return
+     * Fill drawOrder with the bodies that overlap the viewport, sorted by colour.
+     * 
+     * @param frame
+     * @param halfWidth half the viewport width, in meters
+     * @param halfHeight half the viewport height, in meters
      */
-    private Paint getPaintForBody(ISimEntity e) {
-        Paint p;
+    private void cull(FrameSnapshot frame, float halfWidth, float halfHeight) {
+        if (drawOrder.length < frame.count)
+            drawOrder = new long[frame.count];
+
+        drawCount = 0;
+        movingCount = 0;
+        for (int i = 0; i < frame.count; ++i) {
+            float r = frame.radius[i];
 
-        if (e.isStatic())
-            p = FOOD_PAINT;
-        else if (e.isAlive())
-            p = LIVE_PAINT;
+            if (Math.abs(frame.x[i]) - r > halfWidth || Math.abs(frame.y[i]) - r > halfHeight)
+                continue;
+
+            if (!frame.fixed[i])
+                movingCount++;
+
+            drawOrder[drawCount++] = ((long) getColorForBody(frame, i) << 32) | i;
+        }
+
+        Arrays.sort(drawOrder, 0, drawCount);
+    }
+
+    /**
+     * @param frame
+     * @param i
+     * @return colour of the body, with an alpha that shows its energy.
+     */
+    private static int getColorForBody(FrameSnapshot frame, int i) {
+        if (!frame.fixed[i] && frame.energy[i] <= 0f)
+            return DEAD_COLOR;
+
+        int alpha = 4 * (int) frame.energy[i];
+
+        if (alpha < 1)
+            alpha = 64;
+        else if (alpha > 255)
+            alpha = 255;
         else
-            p = DEAD_PAINT;
-
-        if (p != DEAD_PAINT) {
-            if (e instanceof MovingEntity)
-                p.setColor(((MovingEntityDNA)e.getDNA()).getColor());
-            
-            int en = 4 * (int) e.getEnergy();
-
-            if (en < 1)
-                p.setAlpha(64);
-            else if (en > 255)
-                p.setAlpha(255);
-            else
-                p.setAlpha(en);
+            alpha = Math.max(ALPHA_STEP, alpha - alpha % ALPHA_STEP);
+
+        int rgb = frame.fixed[i] ? FOOD_COLOR : frame.color[i] & 0xFFFFFF;
+
+        return (alpha << 24) | rgb;
+    }
+
+    /**
+     * Draw a line from the centre of each visible moving body big enough on screen
+     * to its edge, in the direction it faces.
+     */
+    private void drawLines(Canvas canvas, FrameSnapshot frame, float scale) {
+        if (linePoints.length < movingCount * 4)
+            linePoints = new float[movingCount * 4];
+
+        int n = 0;
+        for (int k = 0; k < drawCount; ++k) {
+            int i = (int) drawOrder[k];
+            float radius = frame.radius[i] * scale;
+
+            if (frame.fixed[i] || radius < LINE_MIN_RADIUS)
+                continue;
+
+            float x = frame.x[i] * scale;
+            float y = frame.y[i] * scale;
+            linePoints[n++] = x;
+            linePoints[n++] = y;
+            linePoints[n++] = x + radius * MathUtils.cos(frame.angle[i]);
+            linePoints[n++] = y + radius * MathUtils.sin(frame.angle[i]);
         }
 
-        return p;
+        if (n > 0)
+            canvas.drawLines(linePoints, 0, n, LINE_PAINT);
     }
 
-    private void drawShape(Canvas canvas, Vec2 pos, float angle, Shape shape, Paint bodyPaint, ISimEntity e) {
-        float scale = getWidth() / VIEWPORT_SIZE;
-        pos = new Vec2(pos).mulLocal(scale);
-        canvas.save();
-        canvas.rotate(180.0f * angle / MathUtils.PI, pos.x, pos.y);
-        if (shape.m_type == ShapeType.CIRCLE) {
-            CircleShape circle = (CircleShape) shape;
-            pos.addLocal(circle.m_p.mul(scale));
-            float radius = circle.m_radius * scale;
-            canvas.drawCircle(pos.x, pos.y, radius, bodyPaint);
-
-            if (!e.isStatic()) {
-                canvas.drawLine(pos.x, pos.y, pos.x + radius, pos.y, LINE_PAINT);
-                canvas.drawText("" + e.getEnergy(), pos.x, pos.y, LINE_PAINT);
-            }
+    /**
+     * Draw the energy of each visible moving body big enough on screen.
+     */
+    private void drawLabels(Canvas canvas, FrameSnapshot frame, float scale) {
+        for (int k = 0; k < drawCount; ++k) {
+            int i = (int) drawOrder[k];
+
+            if (frame.fixed[i] || frame.radius[i] * scale < LABEL_MIN_RADIUS)
+                continue;
+
+            int start = formatLabel(frame.energy[i], 1);
+            canvas.drawText(labelChars, start, labelChars.length - start, frame.x[i] * scale, frame.y[i] * scale, LINE_PAINT);
         }
-        canvas.restore();
+    }
+
+    /**
+     * Format a number into the end of labelChars.
+     * 
+     * @param value
+     * @param decimals number of decimal places, 0 or 1
+     * @return index of the first char of the label
+     */
+    private int formatLabel(float value, int decimals) {
+        char[] c = labelChars;
+        int i = c.length;
+        long v = Math.round(decimals > 0 ? value * 10.0 : value);
+        boolean negative = v < 0;
+
+        if (negative)
+            v = -v;
+
+        if (decimals > 0) {
+            c[--i] = (char) ('0' + v % 10);
+            c[--i] = '.';
+            v /= 10;
+        }
+
+        do {
+            c[--i] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0 && i > 1);
+
+        if (negative)
+            c[--i] = '-';
+
+        return i;
     }
 }
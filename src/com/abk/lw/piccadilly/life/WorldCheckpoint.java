@@ -0,0 +1,328 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+
+import com.abk.lw.piccadilly.life.model.EntityStore;
+import com.abk.lw.piccadilly.life.model.Genome;
+import com.abk.lw.piccadilly.life.model.ISimEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntity;
+import com.abk.lw.piccadilly.life.model.MovingEntityDNA;
+import com.abk.lw.piccadilly.life.model.StaticEntityDNA;
+
+/**
+ * Saves a world to a compact binary file and restores it, through memory-mapped
+ * files so large populations are written and read with few system calls.
+ *
+ * Saving is split in two so the slow part needn't hold up the world:
+ * {@link #encode(PiccadillyLifeModelRoot)} copies the world into a buffer, which
+ * only takes memory writes, then {@link #save(ByteBuffer, File)} writes the buffer
+ * to storage from any thread.
+ *
+ * A checkpoint holds every entity's ID, position, rotation, velocity, radius, energy,
+ * age, movement countdown, instruction index and genes, and the world's seed, tick
+ * and counts.  A restored world is filled from the checkpoint directly, without
+ * generating a random population first.
+ *
+ * Contacts, joints and the physics engine's internal state are not saved, so a
+ * restored world carries on with the same population but doesn't follow exactly
+ * the course the saved world would have.  A restored world has no input journal.
+ *
+ * @author kgilmer
+ *
+ */
+public final class WorldCheckpoint {
+    private static final int MAGIC = 0x504C4357;
+    private static final int VERSION = 2;
+
+    private static final byte FOOD = 0;
+    private static final byte MOVING = 1;
+
+    /**
+     * magic, version, seed, initial population, tick, births, deaths, next entity ID,
+     * food sensors, entity count
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8 + 8 + 8 + 8 + 1 + 4;
+    /**
+     * type, ID, x, y, radius, energy
+     */
+    private static final int FOOD_SIZE = 1 + 8 + 4 * 4;
+    /**
+     * type, ID, x, y, angle, linear and angular velocity, radius, energy, age, steps,
+     * instruction index, then the lengths of the genome and last encounter, each
+     * followed by the genes.
+     */
+    private static final int MOVING_SIZE = 1 + 8 + 11 * 4 + 2 + 2;
+
+    private WorldCheckpoint() {
+    }
+
+    /**
+     * Save a world.  Call from the thread that steps the world, or while it is not
+     * being stepped.  The file is replaced only once the checkpoint is complete.
+     *
+     * @param model
+     * @param file
+     * @throws IOException
+     */
+    public static void write(PiccadillyLifeModelRoot model, File file) throws IOException {
+        save(encode(model), file);
+    }
+
+    /**
+     * Copy a world into a new checkpoint buffer.  Call from the thread that steps the
+     * world, or while it is not being stepped.
+     *
+     * @param model
+     * @return the checkpoint, ready to read from, for {@link #save(ByteBuffer, File)}
+     */
+    public static ByteBuffer encode(PiccadillyLifeModelRoot model) {
+        EntityStore store = model.getEntites();
+        final int n = store.size();
+
+        int size = HEADER_SIZE;
+        for (int i = 0; i < n; ++i) {
+            ISimEntity e = store.getAt(i);
+
+            if (e.isStatic()) {
+                size += FOOD_SIZE;
+            } else {
+                MovingEntityDNA dna = (MovingEntityDNA) e.getDNA();
+                Genome other = ((MovingEntity) e).getLastEncounter();
+                size += MOVING_SIZE + dna.getGenome().length() + (other == null ? 0 : other.length());
+            }
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(model.getSeed());
+        buf.putInt(model.getInitialMovingBodies());
+        buf.putLong(model.getTick());
+        buf.putLong(model.getBirthCount());
+        buf.putLong(model.getDeathCount());
+        buf.putLong(store.getNextId());
+        buf.put((byte) (model.isFoodSensors() ? 1 : 0));
+        buf.putInt(n);
+
+        for (int i = 0; i < n; ++i)
+            writeEntity(buf, store, store.getAt(i));
+
+        buf.flip();
+
+        return buf;
+    }
+
+    /**
+     * Write a checkpoint made by {@link #encode(PiccadillyLifeModelRoot)} to storage.
+     * May be called from any thread, but only one at a time for a file.  The file is
+     * replaced only once the checkpoint is complete.
+     *
+     * @param checkpoint
+     * @param file
+     * @throws IOException
+     */
+    public static void save(ByteBuffer checkpoint, File file) throws IOException {
+        ByteBuffer src = checkpoint.duplicate();
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(src.remaining());
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, src.remaining());
+            buf.put(src);
+            buf.force();
+        } finally {
+            raf.close();
+        }
+
+        if (!temp.renameTo(file))
+            throw new IOException("Unable to replace " + file);
+    }
+
+    private static void writeEntity(ByteBuffer buf, EntityStore store, ISimEntity e) {
+        Body body = e.getBody();
+        Vec2 p = body.getPosition();
+        int handle = e.getHandle();
+
+        if (e.isStatic()) {
+            buf.put(FOOD);
+            buf.putLong(store.getId(handle));
+            buf.putFloat(p.x);
+            buf.putFloat(p.y);
+            buf.putFloat(((StaticEntityDNA) e.getDNA()).getRadius());
+            buf.putFloat(store.getEnergy(handle));
+            return;
+        }
+
+        MovingEntityDNA dna = (MovingEntityDNA) e.getDNA();
+        Vec2 v = body.getLinearVelocity();
+
+        buf.put(MOVING);
+        buf.putLong(store.getId(handle));
+        buf.putFloat(p.x);
+        buf.putFloat(p.y);
+        buf.putFloat(body.getAngle());
+        buf.putFloat(v.x);
+        buf.putFloat(v.y);
+        buf.putFloat(body.getAngularVelocity());
+        buf.putFloat(dna.getRadius());
+        buf.putFloat(store.getEnergy(handle));
+        buf.putInt(store.getAge(handle));
+        buf.putInt(store.getSteps(handle));
+        buf.putInt(store.getInstructionIndex(handle));
+        writeGenome(buf, dna.getGenome());
+        writeGenome(buf, ((MovingEntity) e).getLastEncounter());
+    }
+
+    private static void writeGenome(ByteBuffer buf, Genome genome) {
+        if (genome == null) {
+            buf.putShort((short) 0);
+            return;
+        }
+
+        buf.putShort((short) genome.length());
+        genome.writeTo(buf);
+    }
+
+    /**
+     * Restore a world saved with {@link #write(PiccadillyLifeModelRoot, File)}.
+     *
+     * @param file
+     * @return the restored world, at the tick it was saved at
+     * @throws IOException if the file can't be read or doesn't hold a checkpoint
+     */
+    public static PiccadillyLifeModelRoot read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC)
+                throw new IOException("Not a world checkpoint");
+
+            int version = buf.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported world checkpoint version " + version);
+
+            long seed = buf.getLong();
+            int movingBodies = buf.getInt();
+            long tick = buf.getLong();
+            long births = buf.getLong();
+            long deaths = buf.getLong();
+            long nextId = buf.getLong();
+            boolean foodSensors = buf.get() != 0;
+            int n = buf.getInt();
+
+            PiccadillyLifeModelRoot model = new PiccadillyLifeModelRoot(movingBodies, seed, tick, births, deaths);
+            model.setFoodSensors(foodSensors);
+
+            Vec2 v = new Vec2();
+            for (int i = 0; i < n; ++i)
+                readEntity(buf, model, v);
+
+            model.getEntites().setNextId(nextId);
+
+            return model;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated world checkpoint " + file, e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void readEntity(ByteBuffer buf, PiccadillyLifeModelRoot model, Vec2 v) throws IOException {
+        byte type = buf.get();
+        long id = buf.getLong();
+        float x = buf.getFloat();
+        float y = buf.getFloat();
+        EntityStore store = model.getEntites();
+
+        if (type == FOOD) {
+            float radius = buf.getFloat();
+            float energy = buf.getFloat();
+            store.setId(model.addFixedEntity(x, y, new StaticEntityDNA(radius), energy).getHandle(), id);
+            return;
+        }
+
+        if (type != MOVING)
+            throw new IOException("Unknown entity type " + type);
+
+        float angle = buf.getFloat();
+        v.x = buf.getFloat();
+        v.y = buf.getFloat();
+        float angularVelocity = buf.getFloat();
+        float radius = buf.getFloat();
+        float energy = buf.getFloat();
+        int age = buf.getInt();
+        int steps = buf.getInt();
+        int instructionIndex = buf.getInt();
+        Genome genome = readGenome(buf);
+        Genome other = readGenome(buf);
+
+        //The initial population's radius isn't rounded to its genes, so can't share DNA.
+        MovingEntityDNA dna = model.internDNA(genome);
+        if (dna.getRadius() != radius)
+            dna = new MovingEntityDNA(genome, radius);
+
+        MovingEntity e = model.addMovingEntity(x, y, dna, energy);
+        e.setLastEncounter(other);
+        Body body = e.getBody();
+        setAngle(body, angle);
+        body.setLinearVelocity(v);
+        body.setAngularVelocity(angularVelocity);
+
+        int handle = e.getHandle();
+        store.setId(handle, id);
+        store.setAge(handle, age);
+        store.setSteps(handle, steps);
+        store.setInstructionIndex(handle, instructionIndex);
+    }
+
+    private static Genome readGenome(ByteBuffer buf) {
+        int length = buf.getShort() & 0xFFFF;
+
+        if (length == 0)
+            return null;
+
+        return Genome.readFrom(buf, length);
+    }
+
+    /**
+     * Rotate a body about its position.  Body.setTransform() is not used because it
+     * searches the whole broad-phase for new contacts on every call.  Every body is
+     * a circle about its origin, so its centre and fixture bounds don't change.
+     */
+    private static void setAngle(Body body, float angle) {
+        body.m_xf.R.set(angle);
+        body.m_sweep.a0 = angle;
+        body.m_sweep.a = angle;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import org.jbox2d.common.Sweep;
+import org.jbox2d.common.Transform;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Fixture;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.joints.JointEdge;
+
+/**
+ * Keeps the bodies of removed entities for reuse by new ones, so births and
+ * deaths don't create and destroy bodies, fixtures and shapes.
+ *
+ * Released bodies stay in the world but are deactivated, which takes them out
+ * of collision and the solver.  A body is handed out again with its position,
+ * radius and velocity reset.  Every body in the pool has a single circle fixture.
+ * Static and dynamic bodies are pooled separately.
+ *
+ * Like the world, a pool must only be used from the simulation thread, between steps.
+ *
+ * @author kgilmer
+ *
+ */
+public class BodyPool {
+    private static final int DEFAULT_MAX_SIZE = 256;
+
+    private final World world;
+    private final int maxSize;
+    private final Body[] dynamicBodies;
+    private final Body[] staticBodies;
+    private int dynamicCount;
+    private int staticCount;
+
+    public BodyPool(World world) {
+        this(world, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param world world the bodies belong to
+     * @param maxSize most bodies of each type kept; bodies released beyond this are destroyed
+     */
+    public BodyPool(World world, int maxSize) {
+        this.world = world;
+        this.maxSize = maxSize;
+        this.dynamicBodies = new Body[maxSize];
+        this.staticBodies = new Body[maxSize];
+    }
+
+    /**
+     * @return world the bodies belong to.
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Take a released body out of the pool and make it active again.
+     *
+     * @param type BodyType.STATIC or BodyType.DYNAMIC
+     * @param x
+     * @param y
+     * @param radius radius of the body's circle fixture
+     * @return a body at rest at x, y, or null if none of that type are pooled.
+     */
+    public Body obtain(BodyType type, float x, float y, float radius) {
+        Body body;
+
+        if (type == BodyType.DYNAMIC) {
+            if (dynamicCount == 0)
+                return null;
+            body = dynamicBodies[--dynamicCount];
+            dynamicBodies[dynamicCount] = null;
+        } else {
+            if (staticCount == 0)
+                return null;
+            body = staticBodies[--staticCount];
+            staticBodies[staticCount] = null;
+        }
+
+        Fixture f = body.getFixtureList();
+        f.getShape().m_radius = radius;
+        body.resetMassData();
+
+        place(body, x, y);
+        body.m_linearVelocity.setZero();
+        body.m_angularVelocity = 0f;
+
+        //Re-activating creates the proxy at the new position and radius.
+        body.setActive(true);
+        body.setAwake(true);
+
+        return body;
+    }
+
+    /**
+     * Move an inactive body, with no rotation.  Body.setTransform() is not used because
+     * it searches the whole broad-phase for new contacts on every call.  An inactive
+     * body has no fixture proxies, so only its transform and sweep need setting.
+     */
+    private static void place(Body body, float x, float y) {
+        body.m_xf.position.set(x, y);
+        body.m_xf.R.set(0f);
+
+        Sweep sweep = body.m_sweep;
+        Transform.mulToOut(body.m_xf, sweep.localCenter, sweep.c0);
+        sweep.c.set(sweep.c0);
+        sweep.a0 = 0f;
+        sweep.a = 0f;
+    }
+
+    /**
+     * Remove a body from the simulation and keep it for reuse.  Joints attached to
+     * the body are destroyed.  If the pool is full the body is destroyed.
+     *
+     * @param body a body with a single circle fixture
+     */
+    public void release(Body body) {
+        boolean dynamic = body.getType() == BodyType.DYNAMIC;
+
+        if ((dynamic ? dynamicCount : staticCount) == maxSize) {
+            world.destroyBody(body);
+            return;
+        }
+
+        //Destroying a joint unlinks it from the body, so always take the head of the list.
+        JointEdge je;
+        while ((je = body.getJointList()) != null)
+            world.destroyJoint(je.joint);
+
+        body.m_userData = null;
+        body.setActive(false);
+
+        if (dynamic)
+            dynamicBodies[dynamicCount++] = body;
+        else
+            staticBodies[staticCount++] = body;
+    }
+
+    /**
+     * @return number of bodies waiting for reuse.
+     */
+    public int size() {
+        return dynamicCount + staticCount;
+    }
+}
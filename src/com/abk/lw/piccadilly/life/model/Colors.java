@@ -0,0 +1,66 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+/**
+ * ARGB color packing compatible with android.graphics.Color, so the
+ * model can run on a plain JVM.
+ *
+ * @author kgilmer
+ *
+ */
+public final class Colors {
+
+    private Colors() {
+    }
+
+    /**
+     * @param red 0 - 255
+     * @param green 0 - 255
+     * @param blue 0 - 255
+     * @return opaque color int
+     */
+    public static int rgb(int red, int green, int blue) {
+        return argb(255, red, green, blue);
+    }
+
+    /**
+     * @param alpha 0 - 255
+     * @param red 0 - 255
+     * @param green 0 - 255
+     * @param blue 0 - 255
+     * @return color int
+     */
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.util.Arrays;
+
+/**
+ * Contacts recorded during a physics step, to be resolved once the step is
+ * over.
+ *
+ * Each contact is packed into one long: its type and the handles of the two
+ * entities.  {@link #resolve(EntityStore)} sorts the contacts before passing
+ * them to the entities, so the outcome of a step doesn't depend on the order
+ * the physics engine reported them in.
+ *
+ * The buffer is drained completely every step, so its array is reused from the
+ * start each time and only grows if a step has more contacts than ever before.
+ *
+ * @author kgilmer
+ *
+ */
+public class ContactEventBuffer {
+    /**
+     * A moving entity touched food.  First handle is the moving entity.
+     */
+    public static final int FOOD = 0;
+    /**
+     * Two moving entities touched.  First handle is the lower one.
+     */
+    public static final int ENCOUNTER = 1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int TYPE_SHIFT = 62;
+    private static final int FIRST_SHIFT = 31;
+    private static final long HANDLE_MASK = 0x7FFFFFFFL;
+
+    private long[] events;
+    private int count;
+
+    public ContactEventBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of contacts per step that can be recorded without growing.
+     */
+    public ContactEventBuffer(int capacity) {
+        events = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Record a contact.
+     *
+     * @param type FOOD or ENCOUNTER
+     * @param first handle of first entity
+     * @param second handle of second entity
+     */
+    public void add(int type, int first, int second) {
+        if (count == events.length)
+            events = Arrays.copyOf(events, count * 2);
+
+        events[count++] = ((long) type << TYPE_SHIFT) | ((long) first << FIRST_SHIFT) | second;
+    }
+
+    /**
+     * @return number of contacts recorded since the last resolve.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Pass every recorded contact to both entities involved, food contacts first,
+     * then encounters, each in order of entity handle.  Contacts with an entity
+     * that is no longer in the store are dropped.  The buffer is empty afterwards.
+     *
+     * @param store store the handles refer to
+     */
+    public void resolve(EntityStore store) {
+        final int n = count;
+        count = 0;
+
+        Arrays.sort(events, 0, n);
+
+        for (int i = 0; i < n; ++i) {
+            long e = events[i];
+            ISimEntity a = store.get((int) ((e >>> FIRST_SHIFT) & HANDLE_MASK));
+            ISimEntity b = store.get((int) (e & HANDLE_MASK));
+
+            if (a == null || b == null)
+                continue;
+
+            a.collision(b);
+            b.collision(a);
+        }
+    }
+
+    /**
+     * Drop all recorded contacts.
+     */
+    public void clear() {
+        count = 0;
+    }
+}
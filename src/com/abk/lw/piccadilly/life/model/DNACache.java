@@ -0,0 +1,102 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded DNA by genome, so entities with identical genes share one immutable
+ * {@link MovingEntityDNA}.  Offspring of an exact copy, and clonal lineages in
+ * general, then cost no DNA memory or decoding.
+ *
+ * The least recently used genomes are evicted once the cache is full.  Entities
+ * keep the DNA they were given; an evicted genome is decoded afresh the next time
+ * it is asked for.
+ *
+ * Like the world, a cache must only be used from the simulation thread.
+ *
+ * @author kgilmer
+ *
+ */
+public class DNACache {
+    private static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final Map<Genome, MovingEntityDNA> entries;
+    private long hits;
+    private long misses;
+
+    public DNACache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize most genomes kept
+     */
+    public DNACache(final int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be at least 1");
+
+        entries = new LinkedHashMap<Genome, MovingEntityDNA>(16, .75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Genome, MovingEntityDNA> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param genome
+     * @return the shared DNA decoded from genome.
+     */
+    public MovingEntityDNA get(Genome genome) {
+        MovingEntityDNA dna = entries.get(genome);
+
+        if (dna != null) {
+            hits++;
+            return dna;
+        }
+
+        misses++;
+        dna = new MovingEntityDNA(genome);
+        entries.put(genome, dna);
+
+        return dna;
+    }
+
+    /**
+     * @return number of genomes cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that decoded a genome.
+     */
+    public long getMissCount() {
+        return misses;
+    }
+}
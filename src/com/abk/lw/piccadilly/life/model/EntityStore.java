@@ -0,0 +1,447 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.util.Arrays;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+
+/**
+ * Dense store of all entities in the simulation.
+ * 
+ * Entities are kept packed at the front of an array so the tick loop walks
+ * contiguous memory.  Each entity is given a stable integer handle on insert,
+ * which stays valid until it is removed, while its dense index may change as
+ * other entities are swapped into the gaps left by removal.  Insert and remove
+ * are O(1).  Handles are reused; each entity is also given an ID that never is.
+ * 
+ * Per-entity simulation state (energy, age, step countdown, instruction index)
+ * lives here in parallel primitive arrays rather than in the entity objects, so
+ * {@link #timeStep()} can advance the whole population in one pass.  Entities
+ * read and write their state through their handle.
+ * 
+ * A {@link PopulationCensus} is kept up to date with every change, so population
+ * counts, energy totals and histograms never need a scan.
+ * 
+ * The store belongs to the simulation thread and is not locked; no other thread
+ * may read or write it.  The renderer reads entities from the frame snapshots
+ * written by {@link #writeSnapshot(FrameSnapshot)}.
+ * 
+ * @author kgilmer
+ *
+ */
+public class EntityStore {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int NO_INDEX = -1;
+
+    /**
+     * dense index -> entity
+     */
+    private ISimEntity[] entities;
+    /**
+     * dense index -> handle
+     */
+    private int[] handles;
+    /**
+     * handle -> dense index, or NO_INDEX if the handle is free.
+     */
+    private int[] indices;
+    private int[] freeHandles;
+    private int freeCount;
+    private int nextHandle;
+    private long nextId;
+    private int size;
+
+    /*
+     * Entity state, by dense index.
+     */
+    private long[] ids;
+    private boolean[] fixed;
+    private float[] energy;
+    private float[] mass;
+    private float[] radius;
+    private int[] color;
+    private int[] age;
+    private int[] steps;
+    private int[] instructionIndex;
+
+    /*
+     * Results of the last timeStep(), by handle.
+     */
+    private int[] dueMoves;
+    private int dueMoveCount;
+    private int[] dead;
+    private int deadCount;
+
+    private final PopulationCensus census = new PopulationCensus();
+
+    public EntityStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity initial number of entities that can be stored without growing.
+     */
+    public EntityStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        entities = new ISimEntity[capacity];
+        handles = new int[capacity];
+        indices = new int[capacity];
+        freeHandles = new int[capacity];
+        Arrays.fill(indices, NO_INDEX);
+        ids = new long[capacity];
+        fixed = new boolean[capacity];
+        energy = new float[capacity];
+        mass = new float[capacity];
+        radius = new float[capacity];
+        color = new int[capacity];
+        age = new int[capacity];
+        steps = new int[capacity];
+        instructionIndex = new int[capacity];
+        dueMoves = new int[capacity];
+        dead = new int[capacity];
+    }
+
+    /**
+     * Add an entity and assign it a handle.
+     * 
+     * @param e entity
+     * @param initialEnergy
+     * @param bodyMass mass of entity's body
+     * @param bodyRadius radius of entity's body
+     * @param argb color to draw entity with, 0 for default
+     * @return handle of the entity
+     */
+    public int add(ISimEntity e, float initialEnergy, float bodyMass, float bodyRadius, int argb) {
+        int handle = freeCount > 0 ? freeHandles[--freeCount] : nextHandle++;
+
+        if (size == entities.length)
+            growDense();
+        if (handle >= indices.length)
+            growHandles();
+
+        int index = size;
+        entities[index] = e;
+        handles[index] = handle;
+        indices[handle] = index;
+        ids[index] = nextId++;
+        fixed[index] = e.isStatic();
+        energy[index] = initialEnergy;
+        mass[index] = bodyMass;
+        radius[index] = bodyRadius;
+        color[index] = argb;
+        age[index] = 0;
+        steps[index] = 0;
+        instructionIndex[index] = 0;
+        census.add(fixed[index], initialEnergy);
+        e.setHandle(handle);
+        size = index + 1;
+
+        return handle;
+    }
+
+    /**
+     * Remove an entity by handle.  The last entity is moved into its place.
+     * 
+     * @param handle handle of entity to remove
+     */
+    public void remove(int handle) {
+        int index = indices[handle];
+
+        if (index == NO_INDEX)
+            return;
+
+        //Let the entity keep its final state before the slot is reused.
+        entities[index].setHandle(NO_INDEX);
+        census.remove(fixed[index], energy[index], age[index]);
+
+        int last = size - 1;
+        if (index != last) {
+            entities[index] = entities[last];
+            handles[index] = handles[last];
+            indices[handles[index]] = index;
+            ids[index] = ids[last];
+            fixed[index] = fixed[last];
+            energy[index] = energy[last];
+            mass[index] = mass[last];
+            radius[index] = radius[last];
+            color[index] = color[last];
+            age[index] = age[last];
+            steps[index] = steps[last];
+            instructionIndex[index] = instructionIndex[last];
+        }
+
+        entities[last] = null;
+        indices[handle] = NO_INDEX;
+        freeHandles[freeCount++] = handle;
+        size = last;
+    }
+
+    /**
+     * @param handle
+     * @return entity with handle, or null if handle is not in use.
+     */
+    public ISimEntity get(int handle) {
+        if (handle < 0 || handle >= indices.length)
+            return null;
+
+        int index = indices[handle];
+
+        return index == NO_INDEX ? null : entities[index];
+    }
+
+    /**
+     * @param index dense index, 0 to size() - 1
+     * @return entity at index
+     */
+    public ISimEntity getAt(int index) {
+        return entities[index];
+    }
+
+    /**
+     * @param handle
+     * @return current dense index of handle, or -1 if not in use.
+     */
+    public int indexOf(int handle) {
+        return indices[handle];
+    }
+
+    /**
+     * @return number of entities in store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Advance every entity by one tick: heartbeat energy drain, aging and the
+     * movement step countdown for moving entities, energy growth for food.
+     * 
+     * Entities that were already out of energy are not advanced; their handles
+     * are collected for removal, see {@link #getDeadCount()}.  Moving entities
+     * whose step countdown expired are collected as well, see {@link #getDueMoveCount()},
+     * so their movement can be applied to their bodies.
+     */
+    public void timeStep() {
+        final int n = size;
+        dueMoveCount = 0;
+        deadCount = 0;
+
+        for (int i = 0; i < n; ++i) {
+            if (energy[i] <= 0f)
+                dead[deadCount++] = handles[i];
+            else if (step(i))
+                dueMoves[dueMoveCount++] = handles[i];
+        }
+    }
+
+    /**
+     * Advance a single entity by one tick.
+     * 
+     * @param handle
+     * @return true if a moving entity's step countdown expired and it should move.
+     */
+    public boolean timeStep(int handle) {
+        return step(indices[handle]);
+    }
+
+    private boolean step(int i) {
+        float e = energy[i];
+
+        if (fixed[i]) {
+            energy[i] = e + FixedEntity.ENERGY_INC * radius[i];
+            census.energyChanged(true, e, energy[i]);
+            return false;
+        }
+
+        energy[i] = e - MovingEntity.HEART_BEAT_ENERGY * mass[i];
+        census.energyChanged(false, e, energy[i]);
+        census.ageChanged(age[i], ++age[i]);
+
+        if (++steps[i] < MovingEntity.STEP_DELAY)
+            return false;
+
+        steps[i] = 0;
+        return true;
+    }
+
+    /**
+     * @return number of moving entities due to move after the last {@link #timeStep()}.
+     */
+    public int getDueMoveCount() {
+        return dueMoveCount;
+    }
+
+    /**
+     * @param k 0 to getDueMoveCount() - 1
+     * @return handle of entity due to move
+     */
+    public int getDueMove(int k) {
+        return dueMoves[k];
+    }
+
+    /**
+     * @return number of entities found out of energy by the last {@link #timeStep()}.
+     */
+    public int getDeadCount() {
+        return deadCount;
+    }
+
+    /**
+     * @param k 0 to getDeadCount() - 1
+     * @return handle of dead entity
+     */
+    public int getDead(int k) {
+        return dead[k];
+    }
+
+    /**
+     * @param handle
+     * @return ID of the entity, unique among all entities ever added to the store.
+     */
+    public long getId(int handle) {
+        return ids[indices[handle]];
+    }
+
+    /**
+     * Give an entity the ID it had when it was saved.  The caller is responsible
+     * for IDs staying unique, see {@link #setNextId(long)}.
+     */
+    public void setId(int handle, long id) {
+        ids[indices[handle]] = id;
+    }
+
+    /**
+     * @return ID the next entity added will be given.
+     */
+    public long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * @param nextId ID to give the next entity added, greater than any in use
+     */
+    public void setNextId(long nextId) {
+        this.nextId = nextId;
+    }
+
+    public float getEnergy(int handle) {
+        int i = indices[handle];
+        return i == NO_INDEX ? 0f : energy[i];
+    }
+
+    public void setEnergy(int handle, float value) {
+        int i = indices[handle];
+        census.energyChanged(fixed[i], energy[i], value);
+        energy[i] = value;
+    }
+
+    public void addEnergy(int handle, float delta) {
+        setEnergy(handle, getEnergy(handle) + delta);
+    }
+
+    public int getAge(int handle) {
+        return age[indices[handle]];
+    }
+
+    public void setAge(int handle, int value) {
+        int i = indices[handle];
+        census.ageChanged(age[i], value);
+        age[i] = value;
+    }
+
+    public int getInstructionIndex(int handle) {
+        return instructionIndex[indices[handle]];
+    }
+
+    public void setInstructionIndex(int handle, int value) {
+        instructionIndex[indices[handle]] = value;
+    }
+
+    /**
+     * @return ticks since the entity last moved.
+     */
+    public int getSteps(int handle) {
+        return steps[indices[handle]];
+    }
+
+    public void setSteps(int handle, int value) {
+        steps[indices[handle]] = value;
+    }
+
+    public float getMass(int handle) {
+        return mass[indices[handle]];
+    }
+
+    /**
+     * @return running totals over the entities in the store.
+     */
+    public PopulationCensus getCensus() {
+        return census;
+    }
+
+    /**
+     * Copy what the renderer needs from every entity into a snapshot.  Must be
+     * called from the simulation thread.
+     * 
+     * @param out
+     */
+    public void writeSnapshot(FrameSnapshot out) {
+        final int n = size;
+        out.ensureCapacity(n);
+
+        for (int i = 0; i < n; ++i) {
+            Body b = entities[i].getBody();
+            Vec2 p = b.getPosition();
+            out.x[i] = p.x;
+            out.y[i] = p.y;
+            out.angle[i] = b.getAngle();
+        }
+
+        System.arraycopy(radius, 0, out.radius, 0, n);
+        System.arraycopy(color, 0, out.color, 0, n);
+        System.arraycopy(energy, 0, out.energy, 0, n);
+        System.arraycopy(fixed, 0, out.fixed, 0, n);
+        out.count = n;
+    }
+
+    private void growDense() {
+        int capacity = entities.length * 2;
+
+        entities = Arrays.copyOf(entities, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        fixed = Arrays.copyOf(fixed, capacity);
+        energy = Arrays.copyOf(energy, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        color = Arrays.copyOf(color, capacity);
+        age = Arrays.copyOf(age, capacity);
+        steps = Arrays.copyOf(steps, capacity);
+        instructionIndex = Arrays.copyOf(instructionIndex, capacity);
+        dueMoves = new int[capacity];
+        dead = new int[capacity];
+    }
+
+    private void growHandles() {
+        int old = indices.length;
+        int capacity = old * 2;
+
+        indices = Arrays.copyOf(indices, capacity);
+        Arrays.fill(indices, old, capacity, NO_INDEX);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+}
@@ -30,27 +30,46 @@ import org.jbox2d.dynamics.World;
  *
  */
 public class FixedEntity implements ISimEntity {
-    private static final float ENERGY_INC = .1f;
+    static final float ENERGY_INC = .1f;
     private Body body;
+    /**
+     * Energy at the time the entity left the store.
+     */
     private float energy;
     private final World world;
+    private final EntityStore store;
     private final StaticEntityDNA dna;
+    private int handle = -1;
     
     /**
+     * Create the entity and add it to the store.
+     * 
      * @param body
      * @param dna
      */
-    public FixedEntity(List<ISimEntity> entities, World world, float x, float y, StaticEntityDNA dna, float initialEnergy) {
+    public FixedEntity(EntityStore store, List<ISimEntity> entities, BodyPool bodies, float x, float y, StaticEntityDNA dna, float initialEnergy) {
+        this(store, entities, bodies, x, y, dna, initialEnergy, false);
+    }
+    
+    /**
+     * Create the entity and add it to the store.  Its body is taken from the
+     * pool if one is available.
+     * 
+     * @param sensor if true the food's fixture is a sensor: moving entities pass
+     * through it, and feed when they start to overlap it, without the contact being solved.
+     */
+    public FixedEntity(EntityStore store, List<ISimEntity> entities, BodyPool bodies, float x, float y, StaticEntityDNA dna, float initialEnergy, boolean sensor) {
         super();
-        this.world = world;
+        this.store = store;
+        this.world = bodies.getWorld();
         this.dna = dna;
-        this.body = createFoodBody(x, y, dna.getRadius());
-        this.energy = initialEnergy;
+        this.body = bodies.obtain(BodyType.STATIC, x, y, dna.getRadius());
+        if (this.body == null)
+            this.body = createFoodBody(x, y, dna.getRadius(), sensor);
+        else
+            this.body.getFixtureList().setSensor(sensor);
         this.body.m_userData = this;
-    }
-    
-    private void decrementEnergy(float c) {
-        energy -= c;
+        store.add(this, initialEnergy, body.getMass(), dna.getRadius(), 0);
     }
     
     /**
@@ -58,12 +77,12 @@ public class FixedEntity implements ISimEntity {
      */
     @Override
     public float getEnergy() {
-        return energy;
+        return handle < 0 ? energy : store.getEnergy(handle);
     }
     
     @Override
     public boolean isAlive() {
-        return energy > 0f;
+        return getEnergy() > 0f;
     }
     
     /**
@@ -73,7 +92,7 @@ public class FixedEntity implements ISimEntity {
         return body;
     }
     
-    private Body createFoodBody(float x, float y, float radius) {
+    private Body createFoodBody(float x, float y, float radius, boolean sensor) {
         BodyDef def = new BodyDef();
         def.type = BodyType.STATIC;
         def.position.set(x, y);
@@ -82,6 +101,7 @@ public class FixedEntity implements ISimEntity {
         shape.m_radius = radius;
         FixtureDef fixtureDef = new FixtureDef();
         fixtureDef.shape = shape;
+        fixtureDef.isSensor = sensor;
         body.createFixture(fixtureDef);
         return body;
     }
@@ -91,7 +111,7 @@ public class FixedEntity implements ISimEntity {
      */
     @Override
     public void timeStep() {
-        energy += (ENERGY_INC * body.getFixtureList().getShape().m_radius);
+        store.timeStep(handle);
     }
 
     /* (non-Javadoc)
@@ -107,7 +127,7 @@ public class FixedEntity implements ISimEntity {
      */
     @Override
     public void collision(ISimEntity other) {
-        decrementEnergy(other.getBody().getMass() * ISimEntity.TRANSFER_FACTOR);
+        //The moving entity takes its food from this one, see MovingEntity#collision.
     }
 
     /* (non-Javadoc)
@@ -118,4 +138,23 @@ public class FixedEntity implements ISimEntity {
         
         return dna;
     }
+
+    /* (non-Javadoc)
+     * @see com.abk.lw.piccadilly.life.model.ISimEntity#getHandle()
+     */
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
+    /* (non-Javadoc)
+     * @see com.abk.lw.piccadilly.life.model.ISimEntity#setHandle(int)
+     */
+    @Override
+    public void setHandle(int handle) {
+        if (this.handle >= 0 && handle < 0)
+            energy = store.getEnergy(this.handle);
+
+        this.handle = handle;
+    }
 }
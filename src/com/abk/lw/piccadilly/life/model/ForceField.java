@@ -0,0 +1,320 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.util.Arrays;
+import org.jbox2d.dynamics.Body;
+
+/**
+ * External forces on moving entities: uniform gravity, point attractors and
+ * repulsors, and damping zones.
+ *
+ * Fields stay in effect until changed, and {@link #apply(EntityStore)} adds the sum
+ * of all of them to every moving entity once per physics step.  It gathers the
+ * position, velocity and mass of each entity into flat arrays, sums the fields
+ * into force arrays one field at a time in tight loops, then adds the forces to
+ * the bodies.  Cost is linear in entities times fields.
+ *
+ * All fields are scaled by mass, so they accelerate small and large entities alike:
+ *
+ *   - gravity accelerates entities by a fixed vector.
+ *   - a point accelerates entities toward it (strength above 0) or away from it
+ *     (below 0), by strength at its center falling linearly to nothing at its radius.
+ *   - a damping zone slows entities inside its radius by damping times their velocity.
+ *
+ * Like the world, a force field must only be used from the simulation thread.
+ * The field of a world is changed through its model, which records each change
+ * in the world's input journal so the run can be replayed.
+ *
+ * @author kgilmer
+ *
+ */
+public class ForceField {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Distances are clamped to this, so an entity on top of a point is not flung away.
+     */
+    private static final float MIN_DISTANCE = 1e-3f;
+
+    private float gravityX;
+    private float gravityY;
+
+    /*
+     * Points, by index.
+     */
+    private float[] pointX = new float[4];
+    private float[] pointY = new float[4];
+    private float[] pointStrength = new float[4];
+    private float[] pointRadius = new float[4];
+    private int pointCount;
+
+    /*
+     * Damping zones, by index.
+     */
+    private float[] zoneX = new float[4];
+    private float[] zoneY = new float[4];
+    private float[] zoneRadiusSq = new float[4];
+    private float[] zoneDamping = new float[4];
+    private int zoneCount;
+
+    /*
+     * Entities being pushed, gathered by apply().
+     */
+    private Body[] targets = new Body[DEFAULT_CAPACITY];
+    private float[] px = new float[DEFAULT_CAPACITY];
+    private float[] py = new float[DEFAULT_CAPACITY];
+    private float[] vx = new float[DEFAULT_CAPACITY];
+    private float[] vy = new float[DEFAULT_CAPACITY];
+    private float[] mass = new float[DEFAULT_CAPACITY];
+    private float[] fx = new float[DEFAULT_CAPACITY];
+    private float[] fy = new float[DEFAULT_CAPACITY];
+
+    /**
+     * Set the uniform acceleration of all moving entities.
+     *
+     * @param x
+     * @param y
+     */
+    public void setGravity(float x, float y) {
+        gravityX = x;
+        gravityY = y;
+    }
+
+    public float getGravityX() {
+        return gravityX;
+    }
+
+    public float getGravityY() {
+        return gravityY;
+    }
+
+    /**
+     * Add a point that pulls entities toward it.
+     *
+     * @param x
+     * @param y
+     * @param strength acceleration at the point, above 0
+     * @param radius distance the pull reaches, above 0
+     * @return index of the point
+     */
+    public int addAttractor(float x, float y, float strength, float radius) {
+        if (strength <= 0)
+            throw new IllegalArgumentException("strength must be above 0");
+
+        return addPoint(x, y, strength, radius);
+    }
+
+    /**
+     * Add a point that pushes entities away from it.
+     *
+     * @param x
+     * @param y
+     * @param strength acceleration at the point, above 0
+     * @param radius distance the push reaches, above 0
+     * @return index of the point
+     */
+    public int addRepulsor(float x, float y, float strength, float radius) {
+        if (strength <= 0)
+            throw new IllegalArgumentException("strength must be above 0");
+
+        return addPoint(x, y, -strength, radius);
+    }
+
+    private int addPoint(float x, float y, float strength, float radius) {
+        if (radius <= 0)
+            throw new IllegalArgumentException("radius must be above 0");
+
+        if (pointCount == pointX.length) {
+            int n = pointCount * 2;
+            pointX = Arrays.copyOf(pointX, n);
+            pointY = Arrays.copyOf(pointY, n);
+            pointStrength = Arrays.copyOf(pointStrength, n);
+            pointRadius = Arrays.copyOf(pointRadius, n);
+        }
+
+        pointX[pointCount] = x;
+        pointY[pointCount] = y;
+        pointStrength[pointCount] = strength;
+        pointRadius[pointCount] = radius;
+
+        return pointCount++;
+    }
+
+    /**
+     * Add a circular zone that slows entities inside it.
+     *
+     * @param x
+     * @param y
+     * @param radius above 0
+     * @param damping fraction of velocity taken away per second, above 0
+     * @return index of the zone
+     */
+    public int addDampingZone(float x, float y, float radius, float damping) {
+        if (radius <= 0)
+            throw new IllegalArgumentException("radius must be above 0");
+
+        if (damping <= 0)
+            throw new IllegalArgumentException("damping must be above 0");
+
+        if (zoneCount == zoneX.length) {
+            int n = zoneCount * 2;
+            zoneX = Arrays.copyOf(zoneX, n);
+            zoneY = Arrays.copyOf(zoneY, n);
+            zoneRadiusSq = Arrays.copyOf(zoneRadiusSq, n);
+            zoneDamping = Arrays.copyOf(zoneDamping, n);
+        }
+
+        zoneX[zoneCount] = x;
+        zoneY[zoneCount] = y;
+        zoneRadiusSq[zoneCount] = radius * radius;
+        zoneDamping[zoneCount] = damping;
+
+        return zoneCount++;
+    }
+
+    /**
+     * @return number of attractors and repulsors.
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return number of damping zones.
+     */
+    public int getDampingZoneCount() {
+        return zoneCount;
+    }
+
+    /**
+     * Remove all points and damping zones.  Gravity is left as it is.
+     */
+    public void clear() {
+        pointCount = 0;
+        zoneCount = 0;
+    }
+
+    /**
+     * @return true if any field would push an entity.
+     */
+    public boolean isActive() {
+        return gravityX != 0 || gravityY != 0 || pointCount > 0 || zoneCount > 0;
+    }
+
+    /**
+     * Add the force of every field to every moving entity in the store.  Forces are
+     * cleared by each world step, so call once before every step.
+     *
+     * @param store
+     * @return number of entities pushed
+     */
+    public int apply(EntityStore store) {
+        if (!isActive())
+            return 0;
+
+        int n = gather(store);
+
+        for (int i = 0; i < n; ++i) {
+            fx[i] = gravityX * mass[i];
+            fy[i] = gravityY * mass[i];
+        }
+
+        for (int p = 0; p < pointCount; ++p)
+            applyPoint(n, pointX[p], pointY[p], pointStrength[p], pointRadius[p]);
+
+        for (int z = 0; z < zoneCount; ++z)
+            applyZone(n, zoneX[z], zoneY[z], zoneRadiusSq[z], zoneDamping[z]);
+
+        int pushed = 0;
+        for (int i = 0; i < n; ++i) {
+            if (fx[i] == 0 && fy[i] == 0)
+                continue;
+
+            //Same as Body.applyForce() at the center of mass, without a Vec2 per call.
+            Body b = targets[i];
+            if (!b.isAwake())
+                b.setAwake(true);
+            b.m_force.x += fx[i];
+            b.m_force.y += fy[i];
+            pushed++;
+        }
+
+        //Don't hold on to bodies that may be released and reused.
+        Arrays.fill(targets, 0, n, null);
+
+        return pushed;
+    }
+
+    private int gather(EntityStore store) {
+        int size = store.size();
+        if (size > targets.length)
+            grow(size);
+
+        int n = 0;
+        for (int i = 0; i < size; ++i) {
+            ISimEntity e = store.getAt(i);
+            if (e == null || e.isStatic())
+                continue;
+
+            Body b = e.getBody();
+            targets[n] = b;
+            px[n] = b.m_sweep.c.x;
+            py[n] = b.m_sweep.c.y;
+            vx[n] = b.m_linearVelocity.x;
+            vy[n] = b.m_linearVelocity.y;
+            mass[n] = b.m_mass;
+            n++;
+        }
+
+        return n;
+    }
+
+    private void applyPoint(int n, float x, float y, float strength, float radius) {
+        float invRadius = 1f / radius;
+
+        for (int i = 0; i < n; ++i) {
+            float dx = x - px[i];
+            float dy = y - py[i];
+            float d = Math.max((float) Math.sqrt(dx * dx + dy * dy), MIN_DISTANCE);
+            float a = strength * Math.max(0f, 1f - d * invRadius) * mass[i] / d;
+            fx[i] += dx * a;
+            fy[i] += dy * a;
+        }
+    }
+
+    private void applyZone(int n, float x, float y, float radiusSq, float damping) {
+        for (int i = 0; i < n; ++i) {
+            float dx = x - px[i];
+            float dy = y - py[i];
+            float a = dx * dx + dy * dy < radiusSq ? -damping * mass[i] : 0f;
+            fx[i] += vx[i] * a;
+            fy[i] += vy[i] * a;
+        }
+    }
+
+    private void grow(int capacity) {
+        int n = Math.max(capacity, targets.length * 2);
+        targets = Arrays.copyOf(targets, n);
+        px = new float[n];
+        py = new float[n];
+        vx = new float[n];
+        vy = new float[n];
+        mass = new float[n];
+        fx = new float[n];
+        fy = new float[n];
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.util.Arrays;
+
+/**
+ * Everything needed to draw one frame, copied out of the simulation at the
+ * end of a tick into primitive arrays.  Entries 0 to count - 1 are valid.
+ * 
+ * A snapshot is written only by the simulation thread and, once published
+ * through a {@link FrameSnapshotBuffer}, read only by the renderer.
+ * 
+ * @author kgilmer
+ *
+ */
+public class FrameSnapshot {
+    public int count;
+    public float[] x;
+    public float[] y;
+    public float[] angle;
+    public float[] radius;
+    /**
+     * ARGB color of moving entities, 0 for food.
+     */
+    public int[] color;
+    public float[] energy;
+    public boolean[] fixed;
+
+    /**
+     * Increases with every published frame.
+     */
+    volatile long sequence;
+
+    public FrameSnapshot() {
+        this(64);
+    }
+
+    public FrameSnapshot(int capacity) {
+        x = new float[capacity];
+        y = new float[capacity];
+        angle = new float[capacity];
+        radius = new float[capacity];
+        color = new int[capacity];
+        energy = new float[capacity];
+        fixed = new boolean[capacity];
+    }
+
+    /**
+     * Make room for at least n entries.  Current contents are kept.
+     * 
+     * @param n
+     */
+    public void ensureCapacity(int n) {
+        if (n <= x.length)
+            return;
+
+        int capacity = Math.max(n, x.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        color = Arrays.copyOf(color, capacity);
+        energy = Arrays.copyOf(energy, capacity);
+        fixed = Arrays.copyOf(fixed, capacity);
+    }
+}
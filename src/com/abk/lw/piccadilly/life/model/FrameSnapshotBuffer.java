@@ -0,0 +1,66 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands completed {@link FrameSnapshot}s from the simulation thread to the
+ * renderer without either one waiting on the other.
+ * 
+ * The writer fills its back buffer and publishes it; the reader takes the most
+ * recently published frame as its front buffer.  A third buffer sits between
+ * them, so the writer never overwrites the frame being drawn and the reader
+ * never sees a partially written one.
+ * 
+ * @author kgilmer
+ *
+ */
+public class FrameSnapshotBuffer {
+    private final AtomicReference<FrameSnapshot> ready = new AtomicReference<FrameSnapshot>(new FrameSnapshot());
+    private FrameSnapshot back = new FrameSnapshot();
+    private FrameSnapshot front = new FrameSnapshot();
+    private long sequence;
+
+    /**
+     * Called by the writer.
+     * 
+     * @return snapshot to fill for the next frame.
+     */
+    public FrameSnapshot getBack() {
+        return back;
+    }
+
+    /**
+     * Called by the writer once the back buffer is complete.
+     */
+    public void publish() {
+        back.sequence = ++sequence;
+        back = ready.getAndSet(back);
+    }
+
+    /**
+     * Called by the reader.  The returned snapshot remains valid until the next call.
+     * 
+     * @return latest completed snapshot.
+     */
+    public FrameSnapshot acquire() {
+        if (ready.get().sequence > front.sequence)
+            front = ready.getAndSet(front);
+
+        return front;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Immutable, packed sequence of genes.  Every gene is 0 - 255 and is stored
+ * in one byte.  Genomes are compared and hashed by content.
+ * 
+ * Because a genome never changes, an exact copy is the genome itself, and
+ * entities can share genomes freely.
+ * 
+ * @author kgilmer
+ *
+ */
+public final class Genome {
+    private final byte[] genes;
+    private final int hash;
+
+    private Genome(byte[] genes) {
+        this.genes = genes;
+        this.hash = Arrays.hashCode(genes);
+    }
+
+    /**
+     * @param genes values 0 - 255
+     * @return packed genome
+     */
+    public static Genome pack(int[] genes) {
+        byte[] g = new byte[genes.length];
+
+        for (int i = 0; i < genes.length; ++i)
+            g[i] = (byte) genes[i];
+
+        return new Genome(g);
+    }
+
+    /**
+     * @param genes packed genes, copied
+     * @return genome
+     */
+    public static Genome wrap(byte[] genes) {
+        return new Genome(genes.clone());
+    }
+
+    /**
+     * @param length
+     * @param rnd
+     * @return genome of random genes
+     */
+    public static Genome random(int length, Random rnd) {
+        byte[] g = new byte[length];
+
+        rnd.nextBytes(g);
+
+        return new Genome(g);
+    }
+
+    /**
+     * @return number of genes
+     */
+    public int length() {
+        return genes.length;
+    }
+
+    /**
+     * @param index
+     * @return gene value, 0 - 255
+     */
+    public int get(int index) {
+        return genes[index] & 0xFF;
+    }
+
+    /**
+     * @param maxMutations exclusive upper bound on the number of genes changed
+     * @param rnd
+     * @return copy of this genome with a random number of genes set to random values.
+     */
+    public Genome mutate(int maxMutations, Random rnd) {
+        byte[] g = genes.clone();
+        int n = rnd.nextInt(maxMutations);
+
+        for (int i = 0; i < n; ++i)
+            g[rnd.nextInt(g.length)] = (byte) rnd.nextInt(256);
+
+        return new Genome(g);
+    }
+
+    /**
+     * @param other genome of the same length
+     * @param breakPoint index of first gene taken from other
+     * @return genome with genes before breakPoint from this genome and the rest from other.
+     */
+    public Genome crossover(Genome other, int breakPoint) {
+        byte[] g = new byte[genes.length];
+
+        System.arraycopy(genes, 0, g, 0, breakPoint);
+        System.arraycopy(other.genes, breakPoint, g, breakPoint, g.length - breakPoint);
+
+        return new Genome(g);
+    }
+
+    /**
+     * @param from first gene
+     * @param to last gene, exclusive
+     * @return unpacked values of a range of genes
+     */
+    public int[] toArray(int from, int to) {
+        int[] a = new int[to - from];
+
+        for (int i = from; i < to; ++i)
+            a[i - from] = genes[i] & 0xFF;
+
+        return a;
+    }
+
+    /**
+     * @return unpacked values of all genes
+     */
+    public int[] toArray() {
+        return toArray(0, genes.length);
+    }
+
+    /**
+     * @return copy of the packed genes
+     */
+    public byte[] toBytes() {
+        return genes.clone();
+    }
+
+    /**
+     * Write the packed genes.
+     *
+     * @param buf
+     */
+    public void writeTo(ByteBuffer buf) {
+        buf.put(genes);
+    }
+
+    /**
+     * @param buf buffer positioned at packed genes written by {@link #writeTo(ByteBuffer)}
+     * @param length number of genes
+     * @return genome
+     */
+    public static Genome readFrom(ByteBuffer buf, int length) {
+        byte[] g = new byte[length];
+
+        buf.get(g);
+
+        return new Genome(g);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof Genome))
+            return false;
+
+        Genome other = (Genome) obj;
+
+        return hash == other.hash && Arrays.equals(genes, other.genes);
+    }
+}
@@ -51,7 +51,8 @@ public interface ISimEntity {
     boolean isStatic();
 
     /**
-     * Handle collision with another body.
+     * Handle collision with another body.  Called after the physics step, see
+     * {@link ContactEventBuffer#resolve(EntityStore)}.
      * 
      * @param other 
      */
@@ -67,4 +68,14 @@ public interface ISimEntity {
      */
     public abstract Object getDNA();
 
+    /**
+     * @return handle assigned by the {@link EntityStore}, or -1 if not stored.
+     */
+    int getHandle();
+
+    /**
+     * @param handle handle assigned by the {@link EntityStore}
+     */
+    void setHandle(int handle);
+
 }
\ No newline at end of file
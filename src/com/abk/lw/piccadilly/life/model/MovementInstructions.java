@@ -31,7 +31,24 @@ public enum MovementInstructions {
     MOVE_E,
     MOVE_W;
     
-    private static final Random RND = new Random();
+
+    /**
+     * values() clones its array on every call, so keep one copy.
+     */
+    private static final MovementInstructions[] VALUES = values();
+
+    /**
+     * Unit impulse for each instruction, by ordinal.
+     */
+    static final float[] IMPULSE_X = new float[VALUES.length];
+    static final float[] IMPULSE_Y = new float[VALUES.length];
+
+    static {
+        IMPULSE_Y[MOVE_E.ordinal()] = 1f;
+        IMPULSE_X[MOVE_N.ordinal()] = -1f;
+        IMPULSE_X[MOVE_S.ordinal()] = 1f;
+        IMPULSE_Y[MOVE_W.ordinal()] = -1f;
+    }
     
     /**
      * @param gene
@@ -54,17 +71,36 @@ public enum MovementInstructions {
         return MovementInstructions.MOVE_W;
     }
     
+    /**
+     * Resolve a sequence of movement genes into instruction ordinals, so they
+     * don't have to be resolved again on every move.
+     * 
+     * @param genome
+     * @param from first movement gene
+     * @param to last movement gene, exclusive
+     * @return ordinal of the instruction for each gene
+     */
+    public static byte[] compile(Genome genome, int from, int to) {
+        byte[] program = new byte[to - from];
+
+        for (int i = from; i < to; ++i)
+            program[i - from] = (byte) resolveMovementGene(genome.get(i)).ordinal();
+
+        return program;
+    }
+
     /**
      * @param length
+     * @param rnd
      * @return sequence of random genes of length 'length'.
      */
-    public static MovementInstructions[] createRandomGenes(int length) {
+    public static MovementInstructions[] createRandomGenes(int length, Random rnd) {
         MovementInstructions genes[] = new MovementInstructions[length];
 
-        int gl = MovementInstructions.values().length;
+        int gl = VALUES.length;
 
         for (int i = 0; i < genes.length; ++i) {
-            genes[i] = MovementInstructions.values()[RND.nextInt(gl)];
+            genes[i] = VALUES[rnd.nextInt(gl)];
         }
 
         return genes;
@@ -34,7 +34,7 @@ import org.jbox2d.dynamics.World;
  */
 public class MovingEntity implements ISimEntity {
     private Body body;
-    private static final int STEP_DELAY = 40;
+    static final int STEP_DELAY = 40;
     /**
      * Entities cannot reproduce before this age.
      */
@@ -42,29 +42,50 @@ public class MovingEntity implements ISimEntity {
     /**
      * Minimum amount of energy expended by any dynamic entity.
      */
-    private static final float HEART_BEAT_ENERGY = .05f;
+    static final float HEART_BEAT_ENERGY = .05f;
 
-    private int instructionIndex = 0;
-    private int steps = 0;
+    /**
+     * Energy at the time the entity left the store.
+     */
     private float energy = 0f;
-    private MovingEntityDNA dna;
+    private final MovingEntityDNA dna;
+    /**
+     * Genes of the last moving entity met, the partner for a combining copy.  Kept
+     * here rather than in the DNA, which may be shared with other entities.
+     */
+    private Genome lastEncounter;
+    /**
+     * Energy this entity has taken from food over its life.
+     */
+    private float energyGathered;
+    /**
+     * Number of times this entity has reproduced.
+     */
+    private int offspring;
     private final World world;
+    private final EntityStore store;
     private final List<ISimEntity> entites;
-    private int age = 0;
+    private int handle = -1;
     
 
     /**
-     * @param body
+     * Create the entity and add it to the store.  Its body is taken from the
+     * pool if one is available.
+     * 
+     * @param bodies
      * @param dna
      */
-    public MovingEntity(List<ISimEntity> entites, World world, float x, float y, MovingEntityDNA dna, float initialEnergy) {
+    public MovingEntity(EntityStore store, List<ISimEntity> entites, BodyPool bodies, float x, float y, MovingEntityDNA dna, float initialEnergy) {
         super();
+        this.store = store;
         this.entites = entites;
-        this.world = world;
+        this.world = bodies.getWorld();
         this.dna = dna;
-        this.energy = initialEnergy;
-        this.body = createCircleBody(x, y, dna.getRadius());
+        this.body = bodies.obtain(BodyType.DYNAMIC, x, y, dna.getRadius());
+        if (this.body == null)
+            this.body = createCircleBody(x, y, dna.getRadius());
         this.body.m_userData = this;
+        store.add(this, initialEnergy, body.getMass(), dna.getRadius(), dna.getColor());
     }
 
     private Body createCircleBody(float x, float y, float radius) {
@@ -91,46 +112,37 @@ public class MovingEntity implements ISimEntity {
      */
     @Override
     public void timeStep() {
-        steps++;
-        age ++;
-        energy -= HEART_BEAT_ENERGY * body.m_mass;
+        if (store.timeStep(handle))
+            move();
+    }
 
-        if (steps < STEP_DELAY)
-            return;
-        
-        steps = 0;
-
-        float fx = 0f, fy = 0f;
-        float cx = (body.getMass() * 2) / 4f;
-
-        //Get next movement instruction
-        MovementInstructions gi = MovementInstructions.resolveMovementGene(dna.getMovement()[instructionIndex]);
-
-        switch (gi)
-        {
-            case MOVE_E:
-                fy = cx;
-                break;
-            case MOVE_N:
-                fx = -cx;
-                break;
-            case MOVE_S:
-                fx = cx;
-                break;
-            case MOVE_W:
-                fy = -cx;
-                break;
-        }
+    /**
+     * Apply the next movement instruction as an impulse on the body.  Called
+     * each time the step countdown in the {@link EntityStore} expires.
+     */
+    public void move() {
+        float mass = store.getMass(handle);
+        int instructionIndex = store.getInstructionIndex(handle);
+        float cx = (mass * 2) / 4f;
+
+        //Get next movement instruction, already resolved when the DNA was built.
+        int op = dna.getProgram()[instructionIndex];
+        float fx = MovementInstructions.IMPULSE_X[op] * cx;
+        float fy = MovementInstructions.IMPULSE_Y[op] * cx;
 
         //Decrement 'energy' based on movement force.
-        energy -= Math.abs(fx) * (body.m_mass * 10);
-        energy -= Math.abs(fy) * (body.m_mass * 10);
+        store.addEnergy(handle, -(Math.abs(fx) * (mass * 10) + Math.abs(fy) * (mass * 10)));
 
-        body.applyLinearImpulse(new Vec2(fx, fy), body.getPosition());
+        //Borrow a vector from the world's pool rather than allocating one per move.
+        Vec2 impulse = world.getPool().popVec2();
+        impulse.set(fx, fy);
+        body.applyLinearImpulse(impulse, body.getPosition());
+        world.getPool().pushVec2(1);
 
         instructionIndex++;
         if (instructionIndex >= MovingEntityDNA.MAX_MOVEMENT_GENES)
             instructionIndex = 0;
+        store.setInstructionIndex(handle, instructionIndex);
     }
 
     /*
@@ -150,7 +162,7 @@ public class MovingEntity implements ISimEntity {
      */
     @Override
     public float getEnergy() {
-        return energy;
+        return handle < 0 ? energy : store.getEnergy(handle);
     }
 
     /*
@@ -160,7 +172,7 @@ public class MovingEntity implements ISimEntity {
      */
     @Override
     public boolean isAlive() {
-        return energy > 0f;
+        return getEnergy() > 0f;
     }
 
     /*
@@ -181,15 +193,24 @@ public class MovingEntity implements ISimEntity {
     @Override
     public void collision(ISimEntity other) {
         if (other.isStatic()) {
-            incEnergy(body.getMass() * ISimEntity.TRANSFER_FACTOR);
+            //Take no more than the food has left, so food can't feed more than it holds.
+            float food = Math.min(store.getMass(handle) * ISimEntity.TRANSFER_FACTOR, Math.max(0f, other.getEnergy()));
+            if (food > 0f) {
+                store.addEnergy(other.getHandle(), -food);
+                incEnergy(food);
+                energyGathered += food;
+                store.getCensus().fed(food);
+            }
         
-            if (energy > dna.getReproductionThreshold() && age > MIN_REPRODUCTION_AGE) {
-                energy = energy / 2;
-                age = 0;
+            float energy = store.getEnergy(handle);
+            if (energy > dna.getReproductionThreshold() && store.getAge(handle) > MIN_REPRODUCTION_AGE) {
+                store.setEnergy(handle, energy / 2);
+                store.setAge(handle, 0);
+                offspring++;
                 entites.add(this);
             }
         } else {
-            dna.putLastEncounter(((MovingEntityDNA) other.getDNA()).toDNA());
+            lastEncounter = ((MovingEntityDNA) other.getDNA()).getGenome();
         }
     }
 
@@ -197,7 +218,35 @@ public class MovingEntity implements ISimEntity {
      * @param mass
      */
     private void incEnergy(float mass) {
-        energy += mass;
+        store.addEnergy(handle, mass);
+    }
+
+    /**
+     * @return energy this entity has taken from food, not counting its offspring.
+     */
+    public float getEnergyGathered() {
+        return energyGathered;
+    }
+
+    /**
+     * @return number of children this entity has had, not counting theirs.
+     */
+    public int getOffspringCount() {
+        return offspring;
+    }
+
+    /**
+     * @return genes of the last moving entity met, or null if none.
+     */
+    public Genome getLastEncounter() {
+        return lastEncounter;
+    }
+
+    /**
+     * @param lastEncounter genes of the last moving entity met, or null
+     */
+    public void setLastEncounter(Genome lastEncounter) {
+        this.lastEncounter = lastEncounter;
     }
 
     /* (non-Javadoc)
@@ -207,4 +256,23 @@ public class MovingEntity implements ISimEntity {
     public Object getDNA() {
         return dna;
     }
+
+    /* (non-Javadoc)
+     * @see com.abk.lw.piccadilly.life.model.ISimEntity#getHandle()
+     */
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
+    /* (non-Javadoc)
+     * @see com.abk.lw.piccadilly.life.model.ISimEntity#setHandle(int)
+     */
+    @Override
+    public void setHandle(int handle) {
+        if (this.handle >= 0 && handle < 0)
+            energy = store.getEnergy(this.handle);
+
+        this.handle = handle;
+    }
 }
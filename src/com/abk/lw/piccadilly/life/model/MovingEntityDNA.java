@@ -15,9 +15,7 @@
  */
 package com.abk.lw.piccadilly.life.model;
 
-import java.util.Arrays;
 import java.util.Random;
-import android.graphics.Color;
 
 /**
  * 0 - 19: movement
@@ -28,28 +26,44 @@ import android.graphics.Color;
  *
  */
 public class MovingEntityDNA {
-    private static final Random RND = new Random();
     private static final float RADIUS_FACTOR = 100;
     public static final int MAX_MOVEMENT_GENES = 20;
     public  static final int TOTAL_GENES = 27;
-    private int[] movement;
-    private int color;
-    private int restCycles;
-    private float radius;
-    private final int[] dna;
+    private static final DNACopyType[] COPY_TYPES = DNACopyType.values();
+    /**
+     * Movement genes resolved to instruction ordinals.
+     */
+    private final byte[] program;
+    private final int color;
+    private final int restCycles;
+    private final float radius;
+    private final Genome genome;
     private final int reproductionThreshold;
     private final int reproductionType;
-    private int[] otherDNA;
+    private final DNACopyType copyType;
     
     
     public MovingEntityDNA(int[] dna) {
-        this.dna = dna;
-        movement = Arrays.copyOfRange(dna, 0, 20);
-        color = Color.rgb(dna[20], dna[21], dna[22]);
-       restCycles = dna[23];
-       radius = dna[24] / RADIUS_FACTOR;   
-       reproductionThreshold = dna[25];
-       reproductionType = dna[26];
+        this(Genome.pack(dna));
+    }
+    
+    public MovingEntityDNA(Genome genome) {
+        this(genome, genome.get(24) / RADIUS_FACTOR);
+    }
+    
+    /**
+     * @param genome
+     * @param radius radius to use in place of the one in the genes, which is rounded
+     */
+    public MovingEntityDNA(Genome genome, float radius) {
+        this.genome = genome;
+        this.radius = radius;
+        color = Colors.rgb(genome.get(20), genome.get(21), genome.get(22));
+       restCycles = genome.get(23);
+       reproductionThreshold = genome.get(25);
+       reproductionType = genome.get(26);
+       copyType = getReproductionType(reproductionType);
+       program = MovementInstructions.compile(genome, 0, MAX_MOVEMENT_GENES);
     }
            
     /**
@@ -61,33 +75,41 @@ public class MovingEntityDNA {
      */
     public MovingEntityDNA(int[] movement, int color, int restCycles, float radius, int reproductionThreshold, int reproductionType) {
         super();
-        this.movement = movement;
         this.color = color;
         this.restCycles = restCycles;
         this.radius = radius;
-        this.dna = new int[TOTAL_GENES];
         this.reproductionThreshold = reproductionThreshold;
         this.reproductionType = reproductionType;
+        this.copyType = getReproductionType(reproductionType);
         
+        int[] dna = new int[TOTAL_GENES];
         for (int i = 0; i < MAX_MOVEMENT_GENES; ++i)
             dna[i] = movement[i];
         
-        dna[20] = Color.red(color);
-        dna[21] = Color.green(color);
-        dna[22] = Color.blue(color);
+        dna[20] = Colors.red(color);
+        dna[21] = Colors.green(color);
+        dna[22] = Colors.blue(color);
         dna[23] = restCycles;
         dna[24] = (int) (radius * RADIUS_FACTOR);
         dna[25] = reproductionThreshold;
         dna[26] = reproductionType;
+        
+        this.genome = Genome.pack(dna);
+        this.program = MovementInstructions.compile(genome, 0, MAX_MOVEMENT_GENES);
     }
-
-
-
+    
     /**
-     * @return the movement
+     * @return movement genes resolved to {@link MovementInstructions} ordinals.
      */
-    public int[] getMovement() {
-        return movement;
+    public byte[] getProgram() {
+        return program;
+    }
+    
+    /**
+     * @return the way this DNA is copied on reproduction.
+     */
+    public DNACopyType getCopyType() {
+        return copyType;
     }
     
     /**
@@ -118,86 +140,78 @@ public class MovingEntityDNA {
         return restCycles;
     }
     
+    /**
+     * @return packed genes.
+     */
+    public Genome getGenome() {
+        return genome;
+    }
+    
+    /**
+     * @return unpacked copy of the genes.
+     */
     public int[] toDNA() {
-        return dna;
+        return genome.toArray();
     }
     
-    public static int[] generateRandomGenes(int length) {
+    public static int[] generateRandomGenes(int length, Random rnd) {
         int[] g = new int[length];
         
         for (int i = 0; i < length; ++i) {
-            g[i] = RND.nextInt(256);
+            g[i] = rnd.nextInt(256);
         }
         
         return g;
     }
 
     /**
-     * @param exact
-     * @return
+     * Genes are copied in their packed form.  An exact copy is this genome.  The
+     * offspring's DNA is then looked up in a {@link DNACache}, so offspring with
+     * the same genes share it.
+     * 
+     * @param partner genes of the last moving entity the parent met, or null
+     * @param rnd random source of the world the offspring is born into
+     * @return genes for offspring
      */
-    public MovingEntityDNA copy() {
-        int[] newdna = null;
-        
-        DNACopyType conType = getReproductionType(reproductionType);
+    public Genome copyGenes(Genome partner, Random rnd) {
+        Genome g = genome;
         
-        switch(conType) {
+        switch(copyType) {
             case EXACT:
-                newdna = Arrays.copyOfRange(dna, 0, dna.length);
                 break;
             case SCRAMBLED:
-                newdna = generateRandomGenes(TOTAL_GENES);
+                g = Genome.random(TOTAL_GENES, rnd);
                 break;
             case MUTATE:
-                newdna = Arrays.copyOfRange(dna, 0, dna.length);
-                for (int i = 0; i < RND.nextInt(TOTAL_GENES / 4); ++i) {
-                    int ind = RND.nextInt(TOTAL_GENES);
-                    int val = RND.nextInt(256);
-                    newdna[ind] = val;
-                }
+                g = genome.mutate(TOTAL_GENES / 4, rnd);
                 break;
             case COMBINE:
-                if (otherDNA == null)
-                    break;
-                
-                int breakPoint = RND.nextInt(TOTAL_GENES);
-                newdna = new int[TOTAL_GENES];
-                for (int i = 0; i < breakPoint; ++i)
-                    newdna[i] = dna[i];
-                for (int i = breakPoint; i < TOTAL_GENES; ++i)
-                    newdna[i] = otherDNA[i];
+                //With no partner met yet, fall back to an exact copy.
+                if (partner != null)
+                    g = genome.crossover(partner, rnd.nextInt(TOTAL_GENES));
                 break;
         }
         
-        MovingEntityDNA d = new MovingEntityDNA(newdna); 
-        
-        return d;
+        return g;
     }
 
     /**
      * @param v
      * @return
      */
-    private DNACopyType getReproductionType(int v) {
-        int l = DNACopyType.values().length;
-        int x = 256 / DNACopyType.values().length;
+    private static DNACopyType getReproductionType(int v) {
+        int l = COPY_TYPES.length;
+        int x = 256 / COPY_TYPES.length;
         
         int c = x;
         for (int i = 0; i < l; ++i) {
             if (v < c)
-                return DNACopyType.values()[i];
+                return COPY_TYPES[i];
             
             c += x;
         }
         
-        return DNACopyType.values()[l];
+        return COPY_TYPES[l - 1];
     }
 
-    /**
-     * Store DNA of last contact in case of reproduction.
-     * @param other
-     */
-    public void putLastEncounter(int[] otherDNA) {
-        this.otherDNA = otherDNA;
-    }
 }
@@ -0,0 +1,176 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+/**
+ * Running totals over the population of an {@link EntityStore}.  The store
+ * updates the census as entities are added and removed and as their energy
+ * and age change, so every figure can be read in O(1) without scanning.
+ *
+ * Age and energy histograms cover moving entities only.  Buckets have a fixed
+ * width; the last bucket also holds everything above it.
+ *
+ * The counts may be read from any thread.  Energy totals and histograms are
+ * written by the simulation thread and should be read there.
+ *
+ * @author kgilmer
+ *
+ */
+public class PopulationCensus {
+    public static final int AGE_BUCKETS = 16;
+    public static final int AGE_BUCKET_WIDTH = 100;
+    public static final int ENERGY_BUCKETS = 16;
+    public static final float ENERGY_BUCKET_WIDTH = 10f;
+
+    private volatile int foodCount;
+    private volatile int movingCount;
+    private double foodEnergy;
+    private double movingEnergy;
+    private double energyGathered;
+    private final int[] ageHistogram = new int[AGE_BUCKETS];
+    private final int[] energyHistogram = new int[ENERGY_BUCKETS];
+
+    void add(boolean fixed, float energy) {
+        if (fixed) {
+            foodCount++;
+            foodEnergy += energy;
+        } else {
+            movingCount++;
+            movingEnergy += energy;
+            ageHistogram[0]++;
+            energyHistogram[energyBucket(energy)]++;
+        }
+    }
+
+    void remove(boolean fixed, float energy, int age) {
+        if (fixed) {
+            foodCount--;
+            foodEnergy -= energy;
+        } else {
+            movingCount--;
+            movingEnergy -= energy;
+            ageHistogram[ageBucket(age)]--;
+            energyHistogram[energyBucket(energy)]--;
+        }
+    }
+
+    void energyChanged(boolean fixed, float from, float to) {
+        if (fixed) {
+            foodEnergy += to - from;
+            return;
+        }
+
+        movingEnergy += to - from;
+
+        int a = energyBucket(from);
+        int b = energyBucket(to);
+        if (a != b) {
+            energyHistogram[a]--;
+            energyHistogram[b]++;
+        }
+    }
+
+    void fed(float energy) {
+        energyGathered += energy;
+    }
+
+    void ageChanged(int from, int to) {
+        int a = ageBucket(from);
+        int b = ageBucket(to);
+        if (a != b) {
+            ageHistogram[a]--;
+            ageHistogram[b]++;
+        }
+    }
+
+    /**
+     * @param age
+     * @return index of the histogram bucket for age
+     */
+    public static int ageBucket(int age) {
+        int b = age / AGE_BUCKET_WIDTH;
+
+        return b < 0 ? 0 : (b >= AGE_BUCKETS ? AGE_BUCKETS - 1 : b);
+    }
+
+    /**
+     * @param energy
+     * @return index of the histogram bucket for energy.  Entities out of energy are in bucket 0.
+     */
+    public static int energyBucket(float energy) {
+        int b = (int) (energy / ENERGY_BUCKET_WIDTH);
+
+        return b < 0 ? 0 : (b >= ENERGY_BUCKETS ? ENERGY_BUCKETS - 1 : b);
+    }
+
+    /**
+     * @return number of food entities.
+     */
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /**
+     * @return number of moving entities.
+     */
+    public int getMovingCount() {
+        return movingCount;
+    }
+
+    /**
+     * @return energy held by all food entities.
+     */
+    public double getFoodEnergy() {
+        return foodEnergy;
+    }
+
+    /**
+     * @return energy held by all moving entities.
+     */
+    public double getMovingEnergy() {
+        return movingEnergy;
+    }
+
+    /**
+     * @return energy moving entities have taken from food since the store was created.
+     */
+    public double getEnergyGathered() {
+        return energyGathered;
+    }
+
+    /**
+     * @return energy held by all entities.
+     */
+    public double getTotalEnergy() {
+        return foodEnergy + movingEnergy;
+    }
+
+    /**
+     * @param bucket 0 to AGE_BUCKETS - 1
+     * @return number of moving entities in the age bucket
+     */
+    public int getAgeCount(int bucket) {
+        return ageHistogram[bucket];
+    }
+
+    /**
+     * @param bucket 0 to ENERGY_BUCKETS - 1
+     * @return number of moving entities in the energy bucket
+     */
+    public int getEnergyCount(int bucket) {
+        return energyHistogram[bucket];
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *   Copyright 2013 Ken Gilmer
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.abk.lw.piccadilly.life.model;
+
+import org.jbox2d.callbacks.ContactImpulse;
+import org.jbox2d.callbacks.ContactListener;
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.dynamics.contacts.Contact;
+
+/**
+ * Record collisions between bodies for the entities that own them.  Nothing
+ * is changed while the physics engine is solving; the contacts are resolved
+ * after the step, see {@link ContactEventBuffer#resolve(EntityStore)}.
+ *
+ * @author kgilmer
+ *
+ */
+public class SimEntityContactListener implements ContactListener {
+
+    private final ContactEventBuffer contacts;
+
+    /**
+     * @param contacts receives the contacts that begin during a step
+     */
+    public SimEntityContactListener(ContactEventBuffer contacts) {
+        this.contacts = contacts;
+    }
+
+    @Override
+    public void preSolve(Contact contact, Manifold arg1) {
+    }
+
+    @Override
+    public void postSolve(Contact contact, ContactImpulse arg1) {
+    }
+
+    @Override
+    public void endContact(Contact contact) {
+    }
+
+    @Override
+    public void beginContact(Contact contact) {
+        ISimEntity se1 = (ISimEntity) contact.getFixtureA().getBody().getUserData();
+        ISimEntity se2 = (ISimEntity) contact.getFixtureB().getBody().getUserData();
+
+        if (se1 == null || se2 == null)
+            return;
+
+        if (se1.isStatic()) {
+            if (!se2.isStatic())
+                contacts.add(ContactEventBuffer.FOOD, se2.getHandle(), se1.getHandle());
+        } else if (se2.isStatic()) {
+            contacts.add(ContactEventBuffer.FOOD, se1.getHandle(), se2.getHandle());
+        } else {
+            int h1 = se1.getHandle();
+            int h2 = se2.getHandle();
+            contacts.add(ContactEventBuffer.ENCOUNTER, Math.min(h1, h2), Math.max(h1, h2));
+        }
+    }
+}
@@ -26,7 +26,6 @@ import java.util.Random;
  *
  */
 public class StaticEntityDNA {
-    private static final Random RND = new Random();
     private static final float RADIUS_FACTOR = 100;
     private float radius;
     private final int[] dna;
@@ -62,11 +61,11 @@ public class StaticEntityDNA {
         return dna;
     }
     
-    public static int[] generateRandomGenes(int length) {
+    public static int[] generateRandomGenes(int length, Random rnd) {
         int[] g = new int[length];
         
         for (int i = 0; i < length; ++i) {
-            g[i] = RND.nextInt(256);
+            g[i] = rnd.nextInt(256);
         }
         
         return g;